@@ -0,0 +1,64 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change of a single input of an observed aggregate over {@code inputs} vars. The cost should grow at most
+ * logarithmically with {@code inputs}, a re-calculation must not touch every input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateBenchmark {
+    @Param({"100", "10000", "100000"})
+    int inputs;
+
+    private List<SimpleVar<Double>> vars;
+    private Var<Double> sum;
+    private Var<Double> max;
+    private int index;
+    private double value;
+
+    @Setup
+    public void setUp() {
+        vars = new ArrayList<>(inputs);
+        for (int i = 0; i < inputs; ++i) {
+            vars.add(Var.valueOf((double) i));
+        }
+        sum = Var.sum(vars);
+        max = Var.max(vars);
+        sum.subscribe(x -> {
+        });
+        max.subscribe(x -> {
+        });
+    }
+
+    /**
+     * Change one input of a sum and a max, O(1) and O(log n).
+     */
+    @Benchmark
+    public Double update() {
+        index = (index + 7919) % inputs;
+        vars.get(index).setValue(++value);
+        return max.get();
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagation of a change through a chain of {@code length} derived vars.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+@State(Scope.Benchmark)
+public class ChainBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int length;
+
+    private SimpleVar<Integer> source;
+    private Var<Integer> eagerTail;
+    private SimpleVar<Integer> idleSource;
+    private SimpleVar<Integer> lazySource;
+    private Var<Integer> lazyTail;
+    private int value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        source = Var.valueOf(0);
+        eagerTail = source;
+        idleSource = Var.valueOf(0);
+        Var<Integer> idleTail = idleSource;
+        lazySource = Var.valueOf(0);
+        lazyTail = lazySource;
+        for (int i = 0; i < length; ++i) {
+            eagerTail = Var.map(eagerTail, x -> x + 1);
+            idleTail = Var.map(idleTail, x -> x + 1);
+            lazyTail = Var.lazyMap(lazyTail, x -> x + 1);
+        }
+        eagerTail.subscribe(x -> {
+        });
+    }
+
+    /**
+     * Set the source of an observed eager chain, every var is re-calculated.
+     */
+    @Benchmark
+    public Integer eager() {
+        source.setValue(++value);
+        return eagerTail.get();
+    }
+
+    /**
+     * Set the source of an eager chain that nobody observes, the vars are suspended and not re-calculated.
+     */
+    @Benchmark
+    public void idle() {
+        idleSource.setValue(++value);
+    }
+
+    /**
+     * Set the source of a lazy chain and read the tail, every var is invalidated and re-calculated.
+     */
+    @Benchmark
+    public Integer lazy() {
+        lazySource.setValue(++value);
+        return lazyTail.get();
+    }
+
+    /**
+     * Read the tail of a lazy chain that is up to date.
+     */
+    @Benchmark
+    public Integer lazyClean() {
+        return lazyTail.get();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several threads increment one observed var. {@code synchronizedSet} serializes the writers with a lock around
+ * {@code get} and {@code setValue}, {@code updateAndGet} lets them update the var lock-free and propagates on
+ * whichever writer finds no propagation in progress. Run with {@code -t} to change the number of writers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+    private final Object lock = new Object();
+    private SimpleVar<Integer> counter;
+
+    @Setup
+    public void setUp() {
+        counter = Var.valueOf(0);
+        Var.map(counter, x -> x * 2).subscribe(x -> {
+        });
+    }
+
+    @Benchmark
+    public Integer synchronizedSet() {
+        synchronized (lock) {
+            int value = counter.get() + 1;
+            counter.setValue(value);
+            return value;
+        }
+    }
+
+    @Benchmark
+    public Integer updateAndGet() {
+        return counter.updateAndGet(x -> x + 1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of delivering a new value through derived vars to subscribers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeliveryBenchmark {
+    private SimpleVar<Integer> source;
+    private int value;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        source = Var.valueOf(0);
+        Var<Integer> a = Var.map(source, x -> x + 1);
+        Var<Integer> b = Var.map(source, x -> x * 2);
+        Var<Integer> c = Var.combine(a, b, (x, y) -> x + y);
+        for (int i = 0; i < 4; ++i) {
+            c.subscribe(blackhole::consume);
+            source.subscribe(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void setValue() {
+        source.setValue(++value);
+    }
+}
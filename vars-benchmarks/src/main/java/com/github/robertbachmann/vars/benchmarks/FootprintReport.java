@@ -0,0 +1,66 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reports the heap size per edge of a graph, measured with JOL: the size of all objects that only exist because of
+ * the edges (subscriptions, subscribers, their atomics and the registry arrays), divided by the number of edges.
+ * <p>
+ * Run with {@code java -cp vars-benchmarks/target/benchmarks.jar
+ * com.github.robertbachmann.vars.benchmarks.FootprintReport [-v]}, {@code -v} also prints the class histogram.
+ */
+public final class FootprintReport {
+    private static final int EDGES = 100_000;
+    private static final List<String> EDGE_CLASSES = Arrays.asList(
+            "com.github.robertbachmann.vars.InternalDownStreamSubscription",
+            "[Lcom.github.robertbachmann.vars.InternalDownStreamSubscription;",
+            "com.github.robertbachmann.vars.InternalDerivedValuePublisher$VarSubscriber",
+            "[Lcom.github.robertbachmann.vars.InternalDerivedValuePublisher$VarSubscriber;",
+            "com.github.robertbachmann.vars.DisposableSubscriptionImpl",
+            "com.github.robertbachmann.vars.InternalDownStreamSubscription$RecursionFlag",
+            "java.util.concurrent.atomic.AtomicInteger",
+            "java.util.concurrent.atomic.AtomicLong",
+            "java.util.concurrent.atomic.AtomicReference");
+
+    private FootprintReport() {
+    }
+
+    public static void main(String[] args) {
+        boolean verbose = Arrays.asList(args).contains("-v");
+        System.setProperty("jol.magicFieldOffset", "true"); // lambdas are hidden classes
+
+        SimpleVar<Integer> source = Var.valueOf(0);
+        List<Object> subscriptions = new ArrayList<>(EDGES);
+        for (int i = 0; i < EDGES; ++i) {
+            subscriptions.add(source.subscribe(x -> {
+            }));
+        }
+        report("subscriber edge", GraphLayout.parseInstance(source, subscriptions), verbose);
+
+        source = Var.valueOf(0);
+        List<Var<Integer>> derived = new ArrayList<>(EDGES);
+        for (int i = 0; i < EDGES; ++i) {
+            derived.add(Var.map(source, x -> x));
+        }
+        report("derived edge", GraphLayout.parseInstance(source, derived), verbose);
+    }
+
+    private static void report(String name, GraphLayout layout, boolean verbose) {
+        long bytes = 0;
+        for (Class<?> type : layout.getClasses()) {
+            if (EDGE_CLASSES.contains(type.getName())) {
+                bytes += layout.getClassSizes().count(type);
+            }
+        }
+        System.out.printf("%-16s %6.1f bytes%n", name + ":", (double) bytes / EDGES);
+        if (verbose) {
+            System.out.println(layout.toFootprint());
+        }
+    }
+}
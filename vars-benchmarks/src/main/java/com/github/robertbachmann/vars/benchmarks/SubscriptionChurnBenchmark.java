@@ -0,0 +1,52 @@
+package com.github.robertbachmann.vars.benchmarks;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of subscribing and disposing one consumer on a var that already has {@code subscribers} subscribers.
+ * The cost should not depend on {@code subscribers}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscriptionChurnBenchmark {
+    @Param({"10", "1000", "100000"})
+    int subscribers;
+
+    private SimpleVar<Integer> var;
+
+    @Setup
+    public void setUp() {
+        var = Var.valueOf(0);
+        for (int i = 0; i < subscribers; ++i) {
+            var.subscribe(x -> {
+            });
+        }
+    }
+
+    @Benchmark
+    public boolean subscribeDispose() {
+        DisposableSubscription subscription = var.subscribe(x -> {
+        });
+        subscription.dispose();
+        return subscription.isDisposed();
+    }
+}
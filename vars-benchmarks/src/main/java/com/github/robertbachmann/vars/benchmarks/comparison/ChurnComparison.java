@@ -0,0 +1,78 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.processors.BehaviorProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.Disposable;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscribing and disposing one consumer on a source that already has {@code subscribers} subscribers.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChurnComparison {
+    @Param({"10", "1000"})
+    private int subscribers;
+
+    private SimpleVar<Integer> var;
+    private BehaviorProcessor<Integer> rxProcessor;
+    private ReplayProcessor<Integer> reactorProcessor;
+
+    @Setup
+    public void setUp() {
+        var = Var.valueOf(0);
+        rxProcessor = BehaviorProcessor.createDefault(0);
+        reactorProcessor = ReplayProcessor.cacheLastOrDefault(0);
+        for (int i = 0; i < subscribers; ++i) {
+            var.subscribe(x -> {
+            });
+            rxProcessor.subscribe(x -> {
+            });
+            reactorProcessor.subscribe(x -> {
+            });
+        }
+    }
+
+    @Benchmark
+    public boolean vars() {
+        DisposableSubscription subscription = var.subscribe(x -> {
+        });
+        subscription.dispose();
+        return subscription.isDisposed();
+    }
+
+    @Benchmark
+    public boolean rxjava() {
+        io.reactivex.disposables.Disposable subscription = rxProcessor.subscribe(x -> {
+        });
+        subscription.dispose();
+        return subscription.isDisposed();
+    }
+
+    @Benchmark
+    public boolean reactor() {
+        Disposable subscription = reactorProcessor.subscribe(x -> {
+        });
+        subscription.dispose();
+        return subscription.isDisposed();
+    }
+}
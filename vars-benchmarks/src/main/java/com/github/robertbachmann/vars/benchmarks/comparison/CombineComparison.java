@@ -0,0 +1,87 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A change of one of {@code inputs} sources that are summed by a single combine.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombineComparison {
+    @Param({"10", "100"})
+    private int inputs;
+
+    private final List<SimpleVar<Integer>> vars = new ArrayList<>();
+    private final List<BehaviorProcessor<Integer>> rxProcessors = new ArrayList<>();
+    private final List<ReplayProcessor<Integer>> reactorProcessors = new ArrayList<>();
+    private int value;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        for (int i = 0; i < inputs; ++i) {
+            vars.add(Var.valueOf(0));
+            rxProcessors.add(BehaviorProcessor.createDefault(0));
+            reactorProcessors.add(ReplayProcessor.cacheLastOrDefault(0));
+        }
+        Var.combineAll(vars, values -> {
+            int sum = 0;
+            for (Integer x : values) {
+                sum += x;
+            }
+            return sum;
+        }).subscribe(blackhole::consume);
+        Flowable.combineLatest(rxProcessors, CombineComparison::sum).subscribe(blackhole::consume);
+        Flux.combineLatest(reactorProcessors, CombineComparison::sum).subscribe(blackhole::consume);
+    }
+
+    private static int sum(Object[] values) {
+        int sum = 0;
+        for (Object x : values) {
+            sum += (Integer) x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void vars() {
+        ++value;
+        vars.get(value % inputs).setValue(value);
+    }
+
+    @Benchmark
+    public void rxjava() {
+        ++value;
+        rxProcessors.get(value % inputs).onNext(value);
+    }
+
+    @Benchmark
+    public void reactor() {
+        ++value;
+        reactorProcessors.get(value % inputs).onNext(value);
+    }
+}
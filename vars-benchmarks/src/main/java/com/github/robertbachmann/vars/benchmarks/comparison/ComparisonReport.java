@@ -0,0 +1,34 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the comparisons of Vars, RxJava and Reactor, and reports throughput, latency percentiles and the
+ * allocation rate (GC profiler). Other JMH options can be passed as arguments, e.g. {@code -p length=10}. The
+ * results are written to {@code comparison.json}.
+ */
+public final class ComparisonReport {
+    private ComparisonReport() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ComparisonReport.class.getPackage().getName() + "\\..*Comparison")
+                .mode(Mode.Throughput)
+                .mode(Mode.SampleTime)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("comparison.json")
+                .build();
+        new Runner(options).run();
+    }
+}
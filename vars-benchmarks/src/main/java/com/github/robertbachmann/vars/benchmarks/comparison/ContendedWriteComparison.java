@@ -0,0 +1,76 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.FlowableProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several threads write to one source with a subscriber. {@code varsSynchronized} serializes the writers with a
+ * lock around {@code setValue}, RxJava and Reactor serialize through a serialized processor and sink. Run with
+ * {@code -t} to change the number of writers.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContendedWriteComparison {
+    private final Object lock = new Object();
+    private final AtomicInteger counter = new AtomicInteger();
+    private SimpleVar<Integer> var;
+    private FlowableProcessor<Integer> rxProcessor;
+    private FluxSink<Integer> reactorSink;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        var = Var.valueOf(0);
+        var.subscribe(blackhole::consume);
+        rxProcessor = BehaviorProcessor.createDefault(0).toSerialized();
+        rxProcessor.subscribe(blackhole::consume);
+        ReplayProcessor<Integer> reactorProcessor = ReplayProcessor.cacheLastOrDefault(0);
+        reactorProcessor.subscribe(blackhole::consume);
+        reactorSink = reactorProcessor.sink();
+    }
+
+    @Benchmark
+    public Integer vars() {
+        return var.updateAndGet(x -> x + 1);
+    }
+
+    @Benchmark
+    public void varsSynchronized() {
+        synchronized (lock) {
+            var.setValue(var.get() + 1);
+        }
+    }
+
+    @Benchmark
+    public void rxjava() {
+        rxProcessor.onNext(counter.incrementAndGet());
+    }
+
+    @Benchmark
+    public void reactor() {
+        reactorSink.next(counter.incrementAndGet());
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A change of a source that passes through {@code length} map stages to one subscriber.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeepChainComparison {
+    @Param({"10", "1000"})
+    private int length;
+
+    private SimpleVar<Integer> var;
+    private BehaviorProcessor<Integer> rxProcessor;
+    private ReplayProcessor<Integer> reactorProcessor;
+    private int value;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        var = Var.valueOf(0);
+        Var<Integer> varTail = var;
+        rxProcessor = BehaviorProcessor.createDefault(0);
+        Flowable<Integer> rxTail = rxProcessor;
+        reactorProcessor = ReplayProcessor.cacheLastOrDefault(0);
+        Flux<Integer> reactorTail = reactorProcessor;
+        for (int i = 0; i < length; ++i) {
+            varTail = Var.map(varTail, x -> x + 1);
+            rxTail = rxTail.map(x -> x + 1);
+            reactorTail = reactorTail.map(x -> x + 1);
+        }
+        varTail.subscribe(blackhole::consume);
+        rxTail.subscribe(blackhole::consume);
+        reactorTail.subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void vars() {
+        var.setValue(++value);
+    }
+
+    @Benchmark
+    public void rxjava() {
+        rxProcessor.onNext(++value);
+    }
+
+    @Benchmark
+    public void reactor() {
+        reactorProcessor.onNext(++value);
+    }
+}
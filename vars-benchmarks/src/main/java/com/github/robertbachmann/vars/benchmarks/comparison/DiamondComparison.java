@@ -0,0 +1,68 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A change of a source that reaches one subscriber on two paths, {@code d = f(a(s), b(s))}. Vars re-calculate
+ * {@code d} once per change, {@code combineLatest} emits twice (once with a stale input).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiamondComparison {
+    private SimpleVar<Integer> var;
+    private BehaviorProcessor<Integer> rxProcessor;
+    private ReplayProcessor<Integer> reactorProcessor;
+    private int value;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        var = Var.valueOf(0);
+        Var.combine(Var.map(var, x -> x + 1), Var.map(var, x -> x * 2), Integer::sum)
+                .subscribe(blackhole::consume);
+
+        rxProcessor = BehaviorProcessor.createDefault(0);
+        Flowable.combineLatest(rxProcessor.map(x -> x + 1), rxProcessor.map(x -> x * 2), Integer::sum)
+                .subscribe(blackhole::consume);
+
+        reactorProcessor = ReplayProcessor.cacheLastOrDefault(0);
+        Flux.combineLatest(reactorProcessor.map(x -> x + 1), reactorProcessor.map(x -> x * 2), Integer::sum)
+                .subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void vars() {
+        var.setValue(++value);
+    }
+
+    @Benchmark
+    public void rxjava() {
+        rxProcessor.onNext(++value);
+    }
+
+    @Benchmark
+    public void reactor() {
+        reactorProcessor.onNext(++value);
+    }
+}
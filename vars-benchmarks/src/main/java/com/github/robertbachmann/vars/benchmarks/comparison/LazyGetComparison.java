@@ -0,0 +1,81 @@
+package com.github.robertbachmann.vars.benchmarks.comparison;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changing the source of a {@code length} deep graph and reading its tail. Vars pull the value through a lazy
+ * chain on {@code get()}. RxJava and Reactor have no pull-based operators, so their chains push every change
+ * into a holder that is read.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyGetComparison {
+    @Param({"10", "1000"})
+    private int length;
+
+    private SimpleVar<Integer> var;
+    private Var<Integer> varTail;
+    private BehaviorProcessor<Integer> rxProcessor;
+    private BehaviorProcessor<Integer> rxTail;
+    private ReplayProcessor<Integer> reactorProcessor;
+    private volatile Integer reactorTail;
+    private int value;
+
+    @Setup
+    public void setUp() {
+        var = Var.valueOf(0);
+        varTail = var;
+        rxProcessor = BehaviorProcessor.createDefault(0);
+        Flowable<Integer> rxChain = rxProcessor;
+        reactorProcessor = ReplayProcessor.cacheLastOrDefault(0);
+        Flux<Integer> reactorChain = reactorProcessor;
+        for (int i = 0; i < length; ++i) {
+            varTail = Var.lazyMap(varTail, x -> x + 1);
+            rxChain = rxChain.map(x -> x + 1);
+            reactorChain = reactorChain.map(x -> x + 1);
+        }
+        rxTail = BehaviorProcessor.create();
+        rxChain.subscribe(rxTail);
+        reactorChain.subscribe(x -> reactorTail = x);
+    }
+
+    @Benchmark
+    public Integer vars() {
+        var.setValue(++value);
+        return varTail.get();
+    }
+
+    @Benchmark
+    public Integer rxjava() {
+        rxProcessor.onNext(++value);
+        return rxTail.getValue();
+    }
+
+    @Benchmark
+    public Integer reactor() {
+        reactorProcessor.onNext(++value);
+        return reactorTail;
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.robertbachmann.vars.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Internal implementation class
+ * <p>
+ * The events of {@link JfrVarMetrics}. Recompute and wave events are reported after the fact with their duration
+ * in the field {@code elapsed} (the event's own duration is 0), so the built-in {@code threshold} setting does not
+ * apply to them. They have a {@code minDuration} setting instead. Churn events have no duration to filter by, one
+ * is reported per subscribe and cancel, so they are disabled unless a recording enables them.
+ */
+final class InternalEvents {
+    static final String PREFIX = "com.github.robertbachmann.vars.";
+
+    private InternalEvents() {
+    }
+
+    @Name(PREFIX + "VarRecompute")
+    @Label("Var Recompute")
+    @Description("The function of a derived var was evaluated")
+    @Category("Vars")
+    @StackTrace(false)
+    static final class Recompute extends Event {
+        @Label("Var")
+        long var;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+
+        @Label("Changed")
+        @Description("False if the result was equivalent to the current value and was suppressed")
+        boolean changed;
+
+        @Label("Minimum Duration")
+        @SettingDefinition
+        boolean minDuration(InternalMinDuration setting) {
+            return elapsed >= setting.getNanos();
+        }
+    }
+
+    @Name(PREFIX + "RecomputeFailure")
+    @Label("Recompute Failure")
+    @Description("The function of a derived var threw an exception")
+    @Category("Vars")
+    static final class RecomputeFailure extends Event {
+        @Label("Var")
+        long var;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+
+        @Label("Exception Class")
+        Class<?> exceptionClass;
+
+        @Label("Message")
+        String message;
+    }
+
+    @Name(PREFIX + "PropagationWave")
+    @Label("Propagation Wave")
+    @Description("A change was propagated through a graph of vars")
+    @Category("Vars")
+    @StackTrace(false)
+    static final class PropagationWave extends Event {
+        @Label("Root Var")
+        long root;
+
+        @Label("Vars")
+        @Description("The number of re-calculated derived vars")
+        int vars;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+
+        @Label("Minimum Duration")
+        @SettingDefinition
+        boolean minDuration(InternalMinDuration setting) {
+            return elapsed >= setting.getNanos();
+        }
+    }
+
+    @Name(PREFIX + "SubscriptionChurn")
+    @Label("Subscription Churn")
+    @Description("A subscriber was added to or removed from a var")
+    @Category("Vars")
+    @Enabled(false)
+    static final class SubscriptionChurn extends Event {
+        @Label("Var")
+        long var;
+
+        @Label("Subscribers")
+        @Description("The number of subscribers after the change, including derived vars")
+        int subscribers;
+    }
+}
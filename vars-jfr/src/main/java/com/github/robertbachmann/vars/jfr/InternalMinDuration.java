@@ -0,0 +1,84 @@
+package com.github.robertbachmann.vars.jfr;
+
+import jdk.jfr.SettingControl;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Internal implementation class
+ * <p>
+ * The {@code minDuration} setting of the events that carry their duration in a field. Values have the format of
+ * the built-in {@code threshold} setting, e.g. {@code "10 ms"}. When several recordings are running, the smallest
+ * value applies.
+ */
+final class InternalMinDuration extends SettingControl {
+    static final String DEFAULT = "1 ms";
+
+    private volatile String value = DEFAULT;
+    private volatile long nanos = parse(DEFAULT);
+
+    long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String combine(Set<String> values) {
+        String min = null;
+        long minNanos = Long.MAX_VALUE;
+        for (String v : values) {
+            long n = parse(v);
+            if (n < minNanos) {
+                min = v;
+                minNanos = n;
+            }
+        }
+        return min != null ? min : DEFAULT;
+    }
+
+    @Override
+    public void setValue(String value) {
+        this.nanos = parse(value);
+        this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    static long parse(String value) {
+        String s = value.trim();
+        int i = 0;
+        while (i < s.length() && Character.isDigit(s.charAt(i))) {
+            ++i;
+        }
+        if (i == 0) {
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+        long amount = Long.parseLong(s.substring(0, i));
+        switch (s.substring(i).trim()) {
+            case "":
+                if (amount != 0) {
+                    throw new IllegalArgumentException("Duration without unit: " + value);
+                }
+                return 0;
+            case "ns":
+                return amount;
+            case "us":
+                return TimeUnit.MICROSECONDS.toNanos(amount);
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "s":
+                return TimeUnit.SECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            case "h":
+                return TimeUnit.HOURS.toNanos(amount);
+            case "d":
+                return TimeUnit.DAYS.toNanos(amount);
+            default:
+                throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+    }
+}
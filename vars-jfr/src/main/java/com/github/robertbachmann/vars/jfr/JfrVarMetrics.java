@@ -0,0 +1,68 @@
+package com.github.robertbachmann.vars.jfr;
+
+import com.github.robertbachmann.vars.VarMetrics;
+
+/**
+ * {@link VarMetrics} that reports to the JDK Flight Recorder, so that slow functions can be correlated with GC
+ * and lock contention in JDK Mission Control. Enable it on source vars with {@code instrument}.
+ * <p>
+ * The events are in the category "Vars":
+ * <ul>
+ * <li>{@code com.github.robertbachmann.vars.VarRecompute}: the var, the duration of its function and whether the
+ * result changed</li>
+ * <li>{@code com.github.robertbachmann.vars.RecomputeFailure}: the var, the duration, and the class and message of
+ * the exception its function threw</li>
+ * <li>{@code com.github.robertbachmann.vars.PropagationWave}: the root var, the number of re-calculated vars and
+ * the duration of a wave</li>
+ * <li>{@code com.github.robertbachmann.vars.SubscriptionChurn}: the var and its number of subscribers after a
+ * subscriber was added or removed</li>
+ * </ul>
+ * Recompute and wave events are only committed if they took at least their {@code minDuration} setting, 1 ms
+ * by default. Churn events are disabled by default. Without a recording that enables an event, reporting it costs
+ * a check of the event type.
+ */
+public final class JfrVarMetrics implements VarMetrics {
+    @Override
+    public void evaluated(long var, long nanos, boolean changed) {
+        InternalEvents.Recompute event = new InternalEvents.Recompute();
+        event.elapsed = nanos;
+        if (event.shouldCommit()) {
+            event.var = var;
+            event.changed = changed;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void failed(long var, long nanos, Throwable error) {
+        InternalEvents.RecomputeFailure event = new InternalEvents.RecomputeFailure();
+        if (event.shouldCommit()) {
+            event.var = var;
+            event.elapsed = nanos;
+            event.exceptionClass = error.getClass();
+            event.message = error.getMessage();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void subscribersChanged(long var, int subscribers) {
+        InternalEvents.SubscriptionChurn event = new InternalEvents.SubscriptionChurn();
+        if (event.shouldCommit()) {
+            event.var = var;
+            event.subscribers = subscribers;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void waveCompleted(long root, int vars, long nanos) {
+        InternalEvents.PropagationWave event = new InternalEvents.PropagationWave();
+        event.elapsed = nanos;
+        if (event.shouldCommit()) {
+            event.root = root;
+            event.vars = vars;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+module com.github.robertbachmann.vars.jfr {
+    exports com.github.robertbachmann.vars.jfr;
+
+    requires com.github.robertbachmann.vars;
+    requires jdk.jfr;
+}
@@ -0,0 +1,120 @@
+package com.github.robertbachmann.vars.jfr.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import com.github.robertbachmann.vars.jfr.JfrVarMetrics;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class JfrVarMetricsTest {
+    private static final String PREFIX = "com.github.robertbachmann.vars.";
+
+    @Test
+    public void testEvents() throws IOException {
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(new JfrVarMetrics());
+        Var<Integer> parity = Var.map(a, x -> x % 2);
+        Var<Integer> inverse = Var.map(a, x -> 12 / x);
+        inverse.subscribe(x -> {
+        }, e -> {
+        });
+
+        List<RecordedEvent> events = record(() -> {
+            DisposableSubscription subscription = parity.subscribe(x -> {
+            });
+            a.setValue(3);
+            a.setValue(0);
+            subscription.dispose();
+        }, "0 ns");
+
+        // 3 % 2 == 1 % 2, 12 / 0 fails
+        List<RecordedEvent> recomputes = ofType(events, "VarRecompute");
+        assertEquals(3, recomputes.size());
+        assertEquals(2, recomputes.stream().filter(e -> e.getLong("var") == parity.getId()).count());
+        assertEquals(1, recomputes.stream().filter(e -> e.getLong("var") == inverse.getId()).count());
+        assertEquals(1, recomputes.stream().filter(e -> !e.getBoolean("changed")).count());
+
+        List<RecordedEvent> failures = ofType(events, "RecomputeFailure");
+        assertEquals(1, failures.size());
+        assertEquals(inverse.getId(), failures.get(0).getLong("var"));
+        assertEquals(ArithmeticException.class.getName(), failures.get(0).getClass("exceptionClass").getName());
+
+        List<RecordedEvent> waves = ofType(events, "PropagationWave");
+        assertEquals(2, waves.size());
+        assertEquals(a.getId(), waves.get(0).getLong("root"));
+        assertEquals(2, waves.get(0).getInt("vars"));
+
+        List<RecordedEvent> churn = ofType(events, "SubscriptionChurn");
+        assertEquals(2, churn.size());
+        assertEquals(parity.getId(), churn.get(0).getLong("var"));
+        assertEquals(1, churn.get(0).getInt("subscribers"));
+        assertEquals(0, churn.get(1).getInt("subscribers"));
+    }
+
+    @Test
+    public void testMinDuration() throws IOException {
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(new JfrVarMetrics());
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        b.subscribe(x -> {
+        });
+
+        List<RecordedEvent> events = record(() -> a.setValue(2), "1 h");
+
+        assertTrue(ofType(events, "VarRecompute").isEmpty());
+        assertTrue(ofType(events, "PropagationWave").isEmpty());
+    }
+
+    @Test
+    public void testChurnDisabledByDefault() throws IOException {
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(new JfrVarMetrics());
+        Var<Integer> b = Var.map(a, x -> x + 1);
+
+        Path file = Files.createTempFile("vars", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            b.subscribe(x -> {
+            }).dispose();
+            recording.stop();
+            recording.dump(file);
+            assertTrue(ofType(RecordingFile.readAllEvents(file), "SubscriptionChurn").isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> record(Runnable runnable, String minDuration) throws IOException {
+        Path file = Files.createTempFile("vars", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "VarRecompute").with("minDuration", minDuration);
+            recording.enable(PREFIX + "RecomputeFailure");
+            recording.enable(PREFIX + "PropagationWave").with("minDuration", minDuration);
+            recording.enable(PREFIX + "SubscriptionChurn");
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(PREFIX + name))
+                .sorted((x, y) -> x.getStartTime().compareTo(y.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Subscriber with a single-slot mailbox: {@code onNext} replaces the value in the slot and schedules a drain on
+ * the executor, so the publisher never waits for the consumer and a slow consumer only sees the latest value.
+ * Drains are serialized by {@code wip}, the consumer is never called concurrently. An error is delivered by a
+ * drain as well, after the value that preceded it. {@code cancelled} is checked before each delivery, so no value
+ * is delivered once {@link #dispose()} returned.
+ */
+final class AsyncDisposableSubscriptionImpl<T> implements DisposableSubscription, Subscriber<T> {
+    static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AsyncDisposableSubscriptionImpl, Subscription> SUBSCRIPTION =
+            AtomicReferenceFieldUpdater.newUpdater(AsyncDisposableSubscriptionImpl.class, Subscription.class,
+                    "subscription");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AsyncDisposableSubscriptionImpl, Object> MAILBOX =
+            AtomicReferenceFieldUpdater.newUpdater(AsyncDisposableSubscriptionImpl.class, Object.class, "mailbox");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<AsyncDisposableSubscriptionImpl> WIP =
+            AtomicIntegerFieldUpdater.newUpdater(AsyncDisposableSubscriptionImpl.class, "wip");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AsyncDisposableSubscriptionImpl, Throwable> ERROR =
+            AtomicReferenceFieldUpdater.newUpdater(AsyncDisposableSubscriptionImpl.class, Throwable.class, "error");
+
+    private volatile Subscription subscription;
+    private volatile Object mailbox;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private volatile int wip;
+    private final Consumer<? super T> consumer;
+    private final Consumer<? super Throwable> errorConsumer;
+    private final Executor executor;
+
+    AsyncDisposableSubscriptionImpl(Consumer<? super T> consumer, Consumer<? super Throwable> errorConsumer,
+                                    Executor executor) {
+        this.consumer = consumer;
+        this.errorConsumer = errorConsumer;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (!SUBSCRIPTION.compareAndSet(this, null, s)) {
+            throw new AssertionError("onSubscribe called more than once");
+        }
+        s.request(1);
+    }
+
+    @Override
+    public void onNext(T t) {
+        Subscription subscription = this.subscription;
+        if (subscription == null) {
+            return; // disposed
+        }
+
+        mailbox = t;
+        if (!scheduleDrain()) {
+            return;
+        }
+        subscription.request(1);
+    }
+
+    /**
+     * @return false if the executor rejected the drain, then the subscription is disposed
+     */
+    private boolean scheduleDrain() {
+        if (WIP.getAndIncrement(this) == 0) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // no drain will deliver this or any later value
+                dispose();
+                WIP.set(this, 0);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delivers the value in the mailbox and then a pending error, until no new value arrived during the delivery.
+     * If the consumer throws, the subscription is disposed and the exception is passed on to the executor.
+     */
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        int missed = 1;
+        for (; ; ) {
+            T value = (T) MAILBOX.getAndSet(this, null);
+            if (value != null && !cancelled) {
+                try {
+                    consumer.accept(value);
+                } catch (Throwable t) {
+                    dispose();
+                    WIP.set(this, 0);
+                    throw t;
+                }
+            }
+            Throwable t = error != null ? ERROR.getAndSet(this, null) : null;
+            if (t != null && !cancelled) {
+                try {
+                    errorConsumer.accept(t);
+                } catch (Throwable e) {
+                    WIP.set(this, 0);
+                    throw e;
+                }
+            }
+
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Like {@link DisposableSubscriptionImpl#onError}, but the error is delivered on the executor, after the value
+     * in the mailbox.
+     */
+    @Override
+    public void onError(Throwable t) {
+        doDispose(false);
+        if (errorConsumer != null && !cancelled) {
+            error = t;
+            scheduleDrain();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        doDispose(false);
+    }
+
+    @Override
+    public void dispose() {
+        cancelled = true;
+        doDispose(true);
+        mailbox = null;
+        error = null;
+    }
+
+    private void doDispose(boolean performCancel) {
+        Subscription subscription = this.subscription;
+        if (subscription == null) {
+            return; // we are done
+        }
+
+        if (!SUBSCRIPTION.compareAndSet(this, subscription, null)) {
+            return; // some other Thread preempted us, we are done
+        }
+
+        if (performCancel) {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return subscription == null;
+    }
+
+    /**
+     * A virtual thread per drain on Java 21+, otherwise a shared pool of daemon threads.
+     */
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread thread = new Thread(r, "vars-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    }
+}
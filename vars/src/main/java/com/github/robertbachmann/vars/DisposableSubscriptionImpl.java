@@ -3,14 +3,17 @@ package com.github.robertbachmann.vars;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 
 /**
  * Internal implementation class
  */
 final class DisposableSubscriptionImpl<T> implements DisposableSubscription, Subscriber<T> {
-    private final AtomicReference<Subscription> subscriptionAtomicReference = new AtomicReference<>(null);
+    private static final AtomicReferenceFieldUpdater<DisposableSubscriptionImpl, Subscription> SUBSCRIPTION =
+            AtomicReferenceFieldUpdater.newUpdater(DisposableSubscriptionImpl.class, Subscription.class, "subscription");
+
+    private volatile Subscription subscription;
     private final Consumer<? super T> consumer;
     private final Consumer<? super Throwable> errorConsumer;
     private final Runnable completeAction;
@@ -23,7 +26,7 @@ final class DisposableSubscriptionImpl<T> implements DisposableSubscription, Sub
 
     @Override
     public void onSubscribe(Subscription s) {
-        if (!subscriptionAtomicReference.compareAndSet(null, s)) {
+        if (!SUBSCRIPTION.compareAndSet(this, null, s)) {
             throw new AssertionError("onSubscribe called more than once");
         }
         s.request(1);
@@ -35,7 +38,7 @@ final class DisposableSubscriptionImpl<T> implements DisposableSubscription, Sub
             consumer.accept(t);
         }
 
-        Subscription subscription = subscriptionAtomicReference.get();
+        Subscription subscription = this.subscription;
         if (subscription != null) {
             subscription.request(1);
         }
@@ -63,12 +66,12 @@ final class DisposableSubscriptionImpl<T> implements DisposableSubscription, Sub
     }
 
     private void doDispose(boolean performCancel) {
-        Subscription subscription = subscriptionAtomicReference.get();
+        Subscription subscription = this.subscription;
         if (subscription == null) {
             return; // we are done
         }
 
-        if (!subscriptionAtomicReference.compareAndSet(subscription, null)) {
+        if (!SUBSCRIPTION.compareAndSet(this, subscription, null)) {
             return; // some other Thread preempted us, we are done
         }
 
@@ -79,6 +82,6 @@ final class DisposableSubscriptionImpl<T> implements DisposableSubscription, Sub
 
     @Override
     public boolean isDisposed() {
-        return subscriptionAtomicReference.get() == null;
+        return subscription == null;
     }
 }
@@ -0,0 +1,54 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reactive variable holder for an unboxed {@code double}. Values are boxed only when they are read through
+ * the {@link Var} API or delivered to a subscriber.
+ */
+public class DoubleVar extends Var<Double> implements DoubleSupplier {
+    public static SimpleDoubleVar valueOf(double val) {
+        return new SimpleDoubleVar(val);
+    }
+
+    public static <A> DoubleVar mapToDouble(Var<A> var1, ToDoubleFunction<? super A> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsDouble(var1.getLastValue()), var1);
+    }
+
+    public final DoubleVar map(DoubleUnaryOperator function) {
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsDouble(getAsDouble()), this);
+    }
+
+    public final DoubleVar combine(DoubleVar var2, DoubleBinaryOperator function) {
+        requireNonNull(var2, "var2");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsDouble(getAsDouble(), var2.getAsDouble()), this, var2);
+    }
+
+    private static DoubleVar create(DoubleSupplier supplier, Publisher<?>... vars) {
+        return new DoubleVar(new InternalDerivedDoublePublisher(supplier, vars).connect());
+    }
+
+    @Override
+    public final double getAsDouble() {
+        InternalPropagation.recordRead(impl);
+        if (impl.isLazy()) {
+            impl.refresh();
+        }
+        return ((DoubleSupplier) impl).getAsDouble();
+    }
+
+    DoubleVar(InternalPublisher<Double> publisher) {
+        super(publisher);
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.robertbachmann.vars;
+
+import java.util.Objects;
+
+/**
+ * Decides whether a new value of a var differs from its current value. Equivalent values are stored but not
+ * propagated. With {@link #tolerance} and {@link #relativeTolerance}, the var keeps its current value instead.
+ *
+ * @param <T> the type of the values
+ */
+@FunctionalInterface
+public interface Equivalence<T> {
+    /**
+     * @return true if {@code a} and {@code b} are interchangeable, both are not null
+     */
+    boolean equivalent(T a, T b);
+
+    /**
+     * Values are equivalent if they are {@link Object#equals(Object) equal} (the default).
+     */
+    static <T> Equivalence<T> equality() {
+        return Objects::equals;
+    }
+
+    /**
+     * Values are equivalent if they are the same instance, e.g. for large immutable values that are replaced
+     * rather than modified.
+     */
+    static <T> Equivalence<T> identity() {
+        return (a, b) -> a == b;
+    }
+
+    /**
+     * Values are equivalent if their hash codes are equal and they are {@link Object#equals(Object) equal}, for
+     * values that cache their hash code.
+     */
+    static <T> Equivalence<T> hashFirst() {
+        return (a, b) -> a == b || a.hashCode() == b.hashCode() && a.equals(b);
+    }
+
+    /**
+     * Numbers are equivalent if they differ by at most {@code epsilon}.
+     */
+    static Equivalence<Number> tolerance(double epsilon) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("epsilon < 0");
+        }
+        return new InternalTolerance(epsilon, 0);
+    }
+
+    /**
+     * Numbers are equivalent if they differ by at most {@code tolerance} times the larger magnitude.
+     */
+    static Equivalence<Number> relativeTolerance(double tolerance) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("tolerance < 0");
+        }
+        return new InternalTolerance(0, tolerance);
+    }
+}
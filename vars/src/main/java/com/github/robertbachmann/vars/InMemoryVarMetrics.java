@@ -0,0 +1,279 @@
+package com.github.robertbachmann.vars;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link VarMetrics} that keeps counters per var and histograms in memory, to be scraped with {@link #snapshot()}.
+ * The counters of a var are discarded once it is garbage collected.
+ * <p>
+ * Histograms have power-of-two buckets: bucket {@code i} counts the values in {@code [2^(i-1), 2^i)}, bucket 0
+ * counts zero.
+ */
+public final class InMemoryVarMetrics implements VarMetrics {
+    private static final int BUCKETS = 65;
+
+    private final ConcurrentHashMap<Long, Counters> counters = new ConcurrentHashMap<>();
+    private final LongAdder waves = new LongAdder();
+    private final AtomicLongArray waveSizes = new AtomicLongArray(BUCKETS);
+    private volatile long resetNanos = System.nanoTime();
+
+    @Override
+    public void written(long var, boolean changed) {
+        Counters c = countersOf(var);
+        c.writes.increment();
+        if (!changed) {
+            c.unchanged.increment();
+        }
+    }
+
+    @Override
+    public void evaluated(long var, long nanos, boolean changed) {
+        Counters c = countersOf(var);
+        c.evaluations.increment();
+        if (!changed) {
+            c.unchanged.increment();
+        }
+        c.recordTime(nanos);
+    }
+
+    @Override
+    public void failed(long var, long nanos, Throwable error) {
+        Counters c = countersOf(var);
+        c.evaluations.increment();
+        c.failures.increment();
+        c.recordTime(nanos);
+    }
+
+    @Override
+    public void delivered(long var) {
+        countersOf(var).deliveries.increment();
+    }
+
+    @Override
+    public void subscribersChanged(long var, int subscribers) {
+        countersOf(var).subscribers = subscribers;
+    }
+
+    @Override
+    public void waveCompleted(long root, int vars, long nanos) {
+        waves.increment();
+        waveSizes.incrementAndGet(bucketOf(vars));
+    }
+
+    @Override
+    public void collected(long var) {
+        counters.remove(var);
+    }
+
+    private Counters countersOf(long var) {
+        Counters c = counters.get(var);
+        return c != null ? c : counters.computeIfAbsent(var, id -> new Counters());
+    }
+
+    /**
+     * @return the statistics of {@code var}, or null if nothing was recorded for it
+     */
+    public Stats get(Var<?> var) {
+        return get(var.getId());
+    }
+
+    Stats get(long var) {
+        Counters c = counters.get(var);
+        return c != null ? c.snapshot(var) : null;
+    }
+
+    /**
+     * @return the statistics of all vars that recorded something, by {@link Var#getId() id}
+     */
+    public Map<Long, Stats> snapshot() {
+        Map<Long, Stats> result = new TreeMap<>();
+        counters.forEach((id, c) -> result.put(id, c.snapshot(id)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return the time since this registry was created or {@link #reset()}, to turn counts into rates
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - resetNanos;
+    }
+
+    public long getWaves() {
+        return waves.sum();
+    }
+
+    /**
+     * @return the histogram of the number of vars re-calculated per wave
+     */
+    public long[] getWaveSizeHistogram() {
+        return toArray(waveSizes);
+    }
+
+    /**
+     * Discards all statistics, e.g. after scraping.
+     */
+    public void reset() {
+        resetNanos = System.nanoTime();
+        counters.clear();
+        waves.reset();
+        for (int i = 0; i < BUCKETS; ++i) {
+            waveSizes.set(i, 0);
+        }
+    }
+
+    private static int bucketOf(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] result = new long[array.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+
+    private static final class Counters {
+        final LongAdder writes = new LongAdder();
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder deliveries = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLongArray times = new AtomicLongArray(BUCKETS);
+        volatile int subscribers;
+
+        void recordTime(long nanos) {
+            totalNanos.add(nanos);
+            times.incrementAndGet(bucketOf(nanos));
+        }
+
+        Stats snapshot(long var) {
+            return new Stats(var, writes.sum(), evaluations.sum(), unchanged.sum(), failures.sum(),
+                    deliveries.sum(), subscribers, totalNanos.sum(), toArray(times));
+        }
+    }
+
+    /**
+     * The statistics of one var at the time of the snapshot.
+     */
+    public static final class Stats {
+        private final long var;
+        private final long writes;
+        private final long evaluations;
+        private final long unchanged;
+        private final long failures;
+        private final long deliveries;
+        private final int subscribers;
+        private final long totalEvaluationNanos;
+        private final long[] evaluationTimeHistogram;
+
+        Stats(long var, long writes, long evaluations, long unchanged, long failures, long deliveries,
+              int subscribers, long totalEvaluationNanos, long[] evaluationTimeHistogram) {
+            this.var = var;
+            this.writes = writes;
+            this.evaluations = evaluations;
+            this.unchanged = unchanged;
+            this.failures = failures;
+            this.deliveries = deliveries;
+            this.subscribers = subscribers;
+            this.totalEvaluationNanos = totalEvaluationNanos;
+            this.evaluationTimeHistogram = evaluationTimeHistogram;
+        }
+
+        public long getVar() {
+            return var;
+        }
+
+        /**
+         * @return the number of propagated writes, for source vars
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        /**
+         * @return the number of times the function was called, including failures
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return the number of writes or evaluations whose value was suppressed, because it was equivalent to
+         * the current value
+         */
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the number of values delivered to subscribers that are not derived vars
+         */
+        public long getDeliveries() {
+            return deliveries;
+        }
+
+        /**
+         * @return the number of subscribers when the count last changed, including derived vars
+         */
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        public long getTotalEvaluationNanos() {
+            return totalEvaluationNanos;
+        }
+
+        /**
+         * @return the histogram of the durations of the function in nanoseconds
+         */
+        public long[] getEvaluationTimeHistogram() {
+            return evaluationTimeHistogram.clone();
+        }
+
+        /**
+         * @param quantile between 0 and 1, e.g. 0.99
+         * @return an upper bound of the duration of the function in nanoseconds at {@code quantile}, or 0 if the
+         * function was not called
+         */
+        public long getEvaluationNanosAt(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("quantile not in [0, 1]");
+            }
+            long rank = (long) Math.ceil(quantile * evaluations);
+            long count = 0;
+            for (int i = 0; i < evaluationTimeHistogram.length; ++i) {
+                count += evaluationTimeHistogram[i];
+                if (count >= rank && count > 0) {
+                    return i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{var=" + var
+                    + ", writes=" + writes
+                    + ", evaluations=" + evaluations
+                    + ", unchanged=" + unchanged
+                    + ", failures=" + failures
+                    + ", deliveries=" + deliveries
+                    + ", subscribers=" + subscribers
+                    + ", totalEvaluationNanos=" + totalEvaluationNanos
+                    + ", evaluationTimeHistogram=" + Arrays.toString(evaluationTimeHistogram)
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reactive variable holder for an unboxed {@code int}. Values are boxed only when they are read through
+ * the {@link Var} API or delivered to a subscriber.
+ */
+public class IntVar extends Var<Integer> implements IntSupplier {
+    public static SimpleIntVar valueOf(int val) {
+        return new SimpleIntVar(val);
+    }
+
+    public static <A> IntVar mapToInt(Var<A> var1, ToIntFunction<? super A> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsInt(var1.getLastValue()), var1);
+    }
+
+    public final IntVar map(IntUnaryOperator function) {
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsInt(getAsInt()), this);
+    }
+
+    public final IntVar combine(IntVar var2, IntBinaryOperator function) {
+        requireNonNull(var2, "var2");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsInt(getAsInt(), var2.getAsInt()), this, var2);
+    }
+
+    private static IntVar create(IntSupplier supplier, Publisher<?>... vars) {
+        return new IntVar(new InternalDerivedIntPublisher(supplier, vars).connect());
+    }
+
+    @Override
+    public final int getAsInt() {
+        InternalPropagation.recordRead(impl);
+        if (impl.isLazy()) {
+            impl.refresh();
+        }
+        return ((IntSupplier) impl).getAsInt();
+    }
+
+    IntVar(InternalPublisher<Integer> publisher) {
+        super(publisher);
+    }
+}
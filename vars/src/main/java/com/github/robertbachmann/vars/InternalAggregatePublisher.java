@@ -0,0 +1,259 @@
+package com.github.robertbachmann.vars;
+
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Derived publisher over many inputs that only processes the inputs which signalled a change since the last
+ * re-calculation, instead of re-reading all inputs.
+ */
+abstract class InternalAggregatePublisher<A, T> extends InternalDerivedValuePublisher<T> {
+    final Var<A>[] inputs;
+    private final int[] changed;
+    private final boolean[] isChanged;
+    private int changedCount;
+    private boolean initialized;
+
+    InternalAggregatePublisher(Var<A>[] inputs) {
+        super(false, null, inputs);
+        this.inputs = inputs;
+        this.changed = new int[inputs.length];
+        this.isChanged = new boolean[inputs.length];
+    }
+
+    /**
+     * Changes are processed incrementally, so none may be missed.
+     */
+    @Override
+    final boolean canSuspend() {
+        return false;
+    }
+
+    @Override
+    final synchronized void upstreamChanged(int index) {
+        if (!isChanged[index]) {
+            isChanged[index] = true;
+            changed[changedCount++] = index;
+        }
+    }
+
+    @Override
+    final synchronized boolean evaluate() {
+        T oldValue = getValue();
+        try {
+            if (!initialized) {
+                rebuild();
+                initialized = true;
+            } else {
+                for (int i = 0; i < changedCount; ++i) {
+                    update(changed[i]);
+                }
+            }
+        } catch (Throwable t) {
+            initialized = false; // partially applied, rebuild on the next re-calculation
+            throw t;
+        } finally {
+            for (int i = 0; i < changedCount; ++i) {
+                isChanged[changed[i]] = false;
+            }
+            changedCount = 0;
+        }
+
+        T newValue = result();
+        updateValue(newValue);
+        return !Objects.equals(oldValue, newValue);
+    }
+
+    /**
+     * Reads all inputs.
+     */
+    abstract void rebuild();
+
+    /**
+     * Reads the input at {@code index}.
+     */
+    abstract void update(int index);
+
+    abstract T result();
+
+    /**
+     * Reduction with an associative operator, backed by a segment tree: O(log n) per changed input. A
+     * {@code null} identity means that the operator has no identity element.
+     */
+    static final class Reduce<T> extends InternalAggregatePublisher<T, T> {
+        private final T identity;
+        private final BinaryOperator<T> operator;
+        private final Object[] tree;
+        private final int leaves;
+
+        Reduce(Var<T>[] inputs, T identity, BinaryOperator<T> operator) {
+            super(inputs);
+            this.identity = identity;
+            this.operator = operator;
+            int size = 1;
+            while (size < inputs.length) {
+                size <<= 1;
+            }
+            this.leaves = size;
+            this.tree = new Object[2 * size];
+        }
+
+        @Override
+        void rebuild() {
+            for (int i = 0; i < leaves; ++i) {
+                tree[leaves + i] = i < inputs.length ? read(i) : identity;
+            }
+            for (int i = leaves - 1; i > 0; --i) {
+                tree[i] = apply(i);
+            }
+        }
+
+        @Override
+        void update(int index) {
+            int i = leaves + index;
+            tree[i] = read(index);
+            for (i >>= 1; i > 0; i >>= 1) {
+                tree[i] = apply(i);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        T result() {
+            return (T) tree[1];
+        }
+
+        private T read(int index) {
+            return Objects.requireNonNull(inputs[index].getLastValue(), "input has no value");
+        }
+
+        @SuppressWarnings("unchecked")
+        private T apply(int node) {
+            T left = (T) tree[2 * node];
+            T right = (T) tree[2 * node + 1];
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            return Objects.requireNonNull(operator.apply(left, right), "operator returned null");
+        }
+    }
+
+    /**
+     * Sum of doubles, maintained by adding the difference of a changed input: O(1) per changed input. The sum is
+     * compensated and re-calculated from the last seen inputs after {@code n} updates, to bound rounding drift.
+     * Differences involving infinity or NaN cannot be undone, so such updates re-calculate the sum as well.
+     */
+    static final class DoubleSum extends InternalAggregatePublisher<Double, Double> {
+        private final double[] values;
+        private double sum;
+        private double compensation;
+        private int updatesSinceRebuild;
+
+        DoubleSum(Var<Double>[] inputs) {
+            super(inputs);
+            this.values = new double[inputs.length];
+        }
+
+        @Override
+        void rebuild() {
+            for (int i = 0; i < inputs.length; ++i) {
+                values[i] = read(i);
+            }
+            resum();
+        }
+
+        @Override
+        void update(int index) {
+            double value = read(index);
+            double oldValue = values[index];
+            values[index] = value;
+
+            if (!Double.isFinite(oldValue) || !Double.isFinite(value) || !Double.isFinite(sum)
+                    || ++updatesSinceRebuild >= values.length) {
+                resum();
+            } else {
+                add(-oldValue);
+                add(value);
+            }
+        }
+
+        @Override
+        Double result() {
+            return Double.isFinite(sum) ? sum + compensation : sum;
+        }
+
+        private void resum() {
+            sum = 0;
+            compensation = 0;
+            for (double value : values) {
+                add(value);
+            }
+            updatesSinceRebuild = 0;
+        }
+
+        // Neumaier's variant of Kahan summation
+        private void add(double value) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+
+        private double read(int index) {
+            Var<Double> input = inputs[index];
+            if (input instanceof DoubleVar) {
+                return ((DoubleVar) input).getAsDouble();
+            }
+            return Objects.requireNonNull(input.getLastValue(), "input has no value");
+        }
+    }
+
+    /**
+     * Number of inputs that match a predicate: O(1) per changed input.
+     */
+    static final class Count<A> extends InternalAggregatePublisher<A, Integer> {
+        private final Predicate<? super A> predicate;
+        private final boolean[] matches;
+        private int count;
+
+        Count(Var<A>[] inputs, Predicate<? super A> predicate) {
+            super(inputs);
+            this.predicate = predicate;
+            this.matches = new boolean[inputs.length];
+        }
+
+        @Override
+        void rebuild() {
+            count = 0;
+            for (int i = 0; i < inputs.length; ++i) {
+                matches[i] = predicate.test(inputs[i].getLastValue());
+                if (matches[i]) {
+                    count++;
+                }
+            }
+        }
+
+        @Override
+        void update(int index) {
+            boolean match = predicate.test(inputs[index].getLastValue());
+            if (match != matches[index]) {
+                matches[index] = match;
+                count += match ? 1 : -1;
+            }
+        }
+
+        @Override
+        Integer result() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.robertbachmann.vars;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Supplier of a var that combines a fixed number of inputs. It reads the last values of the inputs from the same
+ * array that the derived publisher subscribes to, so that the var is a single node whatever its arity, and the
+ * function does not capture each input.
+ */
+final class InternalCombiner<T> implements Supplier<T> {
+    private final Var<?>[] inputs;
+    private final Function<Object[], T> function;
+
+    InternalCombiner(Var<?>[] inputs, Function<Object[], T> function) {
+        this.inputs = inputs;
+        this.function = function;
+    }
+
+    /**
+     * @return the result of the function applied to a new array of the last values of the inputs, in order
+     */
+    @Override
+    public T get() {
+        Object[] values = new Object[inputs.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = inputs[i].getLastValue();
+        }
+        return function.apply(values);
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.robertbachmann.vars;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Internal implementation class
+ * <p>
+ * A publisher whose upstream publishers are the vars that its supplier read with {@link Var#get()} during the
+ * last evaluation. The reads are recorded while evaluating, and {@link #evaluated()} subscribes to new upstream
+ * publishers and cancels the subscriptions of publishers that were not read again, so that branches that are not
+ * taken are not propagated to this publisher. Repeated reads are recorded once: a read of a current upstream
+ * publisher is stamped with the number of the evaluation on its subscriber. An evaluation that reads the same
+ * publishers as the last one, in any order, does not subscribe again. An evaluation that throws keeps the upstream
+ * publishers and only adds the ones it read: the supplier may have thrown before reading them, and must still be
+ * re-calculated when they change.
+ * <p>
+ * When the supplier starts to read a publisher of a higher rank, the rank of this publisher and of its downstream
+ * publishers is raised. Downstream publishers that are already scheduled in the current wave keep their position
+ * and are re-calculated again if this publisher changes afterwards.
+ * <p>
+ * The reads are state of this publisher, so concurrent waves evaluate it one at a time: the evaluation and the
+ * update of the dependencies hold its lock.
+ */
+final class InternalComputedPublisher<T> extends InternalDerivedValuePublisher<T> {
+    private final ArrayList<InternalPublisher<?>> reads = new ArrayList<>();
+    private Map<InternalPublisher<?>, VarSubscriber<?>> dependencies = new IdentityHashMap<>();
+    /**
+     * The publishers read in this evaluation that are not upstream publishers yet, or null if there are none.
+     */
+    private Map<InternalPublisher<?>, Boolean> newReads;
+    private int evaluation;
+    private boolean failed;
+
+    InternalComputedPublisher(Supplier<T> supplier) {
+        super(false, supplier, new Var<?>[0]);
+        InternalPropagation.enableReadTracking();
+    }
+
+    /**
+     * The supplier may read any var, so its results cannot be cached by the values of the upstream publishers.
+     */
+    @Override
+    InternalMemo<T> memoize(int maxEntries) {
+        return null;
+    }
+
+    /**
+     * The upstream publishers are only known after evaluating.
+     */
+    @Override
+    boolean canSuspend() {
+        return false;
+    }
+
+    @Override
+    synchronized boolean evaluate() {
+        reads.clear();
+        newReads = null;
+        evaluation++;
+        // an isolated wave keeps the reads of nested evaluations (lazy vars, vars created by the supplier) apart
+        InternalPropagation propagation = InternalPropagation.enterIsolated();
+        propagation.reader = this;
+        failed = true;
+        try {
+            boolean changed = super.evaluate();
+            failed = false;
+            return changed;
+        } finally {
+            propagation.reader = null;
+            propagation.exit();
+        }
+    }
+
+    /**
+     * Called when the supplier reads {@code publisher}, on the thread that evaluates this publisher.
+     */
+    void recordRead(InternalPublisher<?> publisher) {
+        if (publisher == this) {
+            return;
+        }
+        VarSubscriber<?> subscriber = dependencies.get(publisher);
+        if (subscriber != null) {
+            if (subscriber.readIn == evaluation) {
+                return;
+            }
+            subscriber.readIn = evaluation;
+        } else {
+            if (newReads == null) {
+                newReads = new IdentityHashMap<>();
+            }
+            if (newReads.put(publisher, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        reads.add(publisher);
+    }
+
+    @Override
+    synchronized void evaluated() {
+        if (newReads == null && (failed || reads.size() == dependencies.size())) {
+            // each upstream publisher was read, and nothing else, or the evaluation failed without a new read
+            reads.clear();
+            return;
+        }
+
+        int maxRank = failed ? addDependencies() : updateDependencies();
+        if (maxRank >= getRank()) {
+            raiseRank(maxRank + 1);
+        }
+    }
+
+    /**
+     * Replaces the dependencies by the publishers that were read, called with the lock of this publisher held.
+     *
+     * @return the highest rank of the dependencies
+     */
+    private int updateDependencies() {
+        Map<InternalPublisher<?>, VarSubscriber<?>> previous = dependencies;
+        Map<InternalPublisher<?>, VarSubscriber<?>> current = new IdentityHashMap<>(reads.size() * 2);
+        int maxRank = 0;
+        for (InternalPublisher<?> publisher : reads) {
+            VarSubscriber<?> subscriber = previous.remove(publisher);
+            if (subscriber == null) {
+                subscriber = subscribe(publisher);
+            }
+            current.put(publisher, subscriber);
+            maxRank = Math.max(maxRank, publisher.getRank());
+        }
+        for (VarSubscriber<?> subscriber : previous.values()) {
+            subscriber.cancel();
+        }
+        dependencies = current;
+        reads.clear();
+        newReads = null;
+        return maxRank;
+    }
+
+    /**
+     * Adds the publishers that were read by a failed evaluation to the dependencies, called with the lock of this
+     * publisher held.
+     *
+     * @return the highest rank of the added dependencies
+     */
+    private int addDependencies() {
+        Map<InternalPublisher<?>, VarSubscriber<?>> current = new IdentityHashMap<>(dependencies);
+        int maxRank = 0;
+        for (InternalPublisher<?> publisher : newReads.keySet()) {
+            current.put(publisher, subscribe(publisher));
+            maxRank = Math.max(maxRank, publisher.getRank());
+        }
+        dependencies = current;
+        reads.clear();
+        newReads = null;
+        return maxRank;
+    }
+
+    /**
+     * The dependencies are replaced with the lock of this publisher held, see {@link #evaluated()}.
+     */
+    @Override
+    synchronized void collectUpstream(List<InternalPublisher<?>> inputs) {
+        inputs.addAll(dependencies.keySet());
+    }
+
+    @Override
+    void retainUpstream(boolean retain) {
+        super.retainUpstream(retain);
+        for (VarSubscriber<?> subscriber : dependencies.values()) {
+            subscriber.retain(retain);
+        }
+    }
+
+    private <V> VarSubscriber<V> subscribe(InternalPublisher<V> publisher) {
+        VarSubscriber<V> subscriber = new VarSubscriber<>(this, -1);
+        if (getMetrics() == null) {
+            setMetrics(publisher.getMetrics());
+        }
+        if (publisher.isTraced()) {
+            markTraced();
+        }
+        subscriber.retain(isRetained());
+        publisher.subscribe(subscriber);
+        if (subscriber.observe(true) != null) {
+            publisher.addObserver();
+        }
+        // the supplier has already read the current value
+        subscriber.consumeItem();
+        subscriber.request(1);
+        return subscriber;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalDerivedDoublePublisher extends InternalDerivedValuePublisher<Double> implements DoubleSupplier {
+    private final DoubleSupplier supplier;
+    private volatile double value;
+    private volatile Double boxed;
+
+    InternalDerivedDoublePublisher(DoubleSupplier supplier, Publisher<?>[] publishers) {
+        super(false, null, publishers);
+        this.supplier = supplier;
+    }
+
+    @Override
+    boolean evaluate() {
+        double newValue = supplier.getAsDouble();
+        double oldValue = value;
+        value = newValue;
+        return Double.doubleToLongBits(oldValue) != Double.doubleToLongBits(newValue);
+    }
+
+    @Override
+    public double getAsDouble() {
+        return value;
+    }
+
+    @Override
+    Double getValue() {
+        double current = value;
+        Double result = boxed;
+        if (result == null || Double.doubleToRawLongBits(result) != Double.doubleToRawLongBits(current)) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalDerivedIntPublisher extends InternalDerivedValuePublisher<Integer> implements IntSupplier {
+    private final IntSupplier supplier;
+    private volatile int value;
+    private volatile Integer boxed;
+
+    InternalDerivedIntPublisher(IntSupplier supplier, Publisher<?>[] publishers) {
+        super(false, null, publishers);
+        this.supplier = supplier;
+    }
+
+    @Override
+    boolean evaluate() {
+        int newValue = supplier.getAsInt();
+        int oldValue = value;
+        value = newValue;
+        return oldValue != newValue;
+    }
+
+    @Override
+    public int getAsInt() {
+        return value;
+    }
+
+    @Override
+    Integer getValue() {
+        int current = value;
+        Integer result = boxed;
+        if (result == null || result != current) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalDerivedLongPublisher extends InternalDerivedValuePublisher<Long> implements LongSupplier {
+    private final LongSupplier supplier;
+    private volatile long value;
+    private volatile Long boxed;
+
+    InternalDerivedLongPublisher(LongSupplier supplier, Publisher<?>[] publishers) {
+        super(false, null, publishers);
+        this.supplier = supplier;
+    }
+
+    @Override
+    boolean evaluate() {
+        long newValue = supplier.getAsLong();
+        long oldValue = value;
+        value = newValue;
+        return oldValue != newValue;
+    }
+
+    @Override
+    public long getAsLong() {
+        return value;
+    }
+
+    @Override
+    Long getValue() {
+        long current = value;
+        Long result = boxed;
+        if (result == null || result != current) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+}
@@ -2,53 +2,447 @@ package com.github.robertbachmann.vars;
 
 import com.github.robertbachmann.vars.support.ErrorMappingSubscriber;
 import com.github.robertbachmann.vars.support.PeekingSubscription;
+import com.github.robertbachmann.vars.support.SplitProcessor;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscription;
 
-import java.util.Objects;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 /**
  * Internal implementation class
+ * <p>
+ * A lazy publisher whose upstream publishers are all vars tracks whether it is stale: a new upstream value marks
+ * it, and transitively its lazy downstream publishers, as stale ({@link #invalidate()}), and {@link #refresh()}
+ * re-calculates only stale publishers. Reading a lazy var that is not stale does not touch the graph. A stale
+ * publisher with outstanding downstream demand is re-calculated in the current wave. Lazy publishers with other
+ * upstream publishers are refreshed by requesting from upstream and peeking.
+ * <p>
+ * Signals from upstream (values, errors and completion) are recorded in {@code pendingSignals} and processed when
+ * the wave re-calculates the publisher, so that propagation does not recurse through the graph.
+ * <p>
+ * Re-calculating is split into {@link #beginReCalculate()}, {@link #evaluateQuietly()} and
+ * {@link #endReCalculate()}. Only the first and the last phase touch the wave and the downstream subscriptions,
+ * so the wave may evaluate independent publishers on other threads.
+ * <p>
+ * Upstream publishers reference a derived publisher weakly while it has no subscriptions of its own, so that it
+ * can be garbage collected once it is unreachable otherwise. Its upstream subscriptions are cancelled the next
+ * time they signal, a new derived publisher connects or a source publisher publishes, whichever comes first. A publisher with
+ * subscriptions is retained, so a subscriber keeps receiving values even if nothing else references the var.
+ * <p>
+ * An eager publisher that tracks its staleness is suspended while nobody observes it: it stops requesting from
+ * upstream and behaves like a lazy publisher until it is observed again, so that waves only re-calculate the
+ * publishers whose values are delivered somewhere. Its observers are the subscribers that are not derived
+ * publishers, and the eager derived publishers that are not suspended themselves ({@link VarSubscriber#observe}).
  */
-final class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
+class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
     private final boolean lazy;
     private final Supplier<T> supplier;
+    private final Equivalence<? super T> equivalence;
+    private volatile InternalMemo<T> memo;
+    private final Publisher<?>[] upstreamPublishers;
     private final VarSubscriber[] upstreamSubscriptions;
+    private int rank;
+    private static final int VALUE = 1;
+    private static final int ERROR = 2;
+    private static final int COMPLETE = 4;
+    private static final int CHANGED = 8;
+    private static final int FAILED = 16;
+    private static final ReferenceQueue<InternalDerivedValuePublisher<?>> COLLECTED = new ReferenceQueue<>();
+
+    private final boolean tracksStaleness;
+    private volatile boolean stale = true;
+    private int pendingSignals;
+    private Throwable pendingError;
+    private Throwable evaluationError;
+    private boolean retained; // guarded by this
+    private int observers; // guarded by this
+    private boolean suspendable;
+    private volatile boolean suspended;
+    InternalPropagation scheduledIn;
 
     InternalDerivedValuePublisher(boolean lazy, Supplier<T> supplier, Publisher<?> publishers[]) {
+        this(lazy, supplier, Equivalence.equality(), publishers);
+    }
+
+    InternalDerivedValuePublisher(boolean lazy, Supplier<T> supplier, Equivalence<? super T> equivalence,
+                                  Publisher<?> publishers[]) {
         this.lazy = lazy;
         this.supplier = supplier;
+        this.equivalence = equivalence;
+        this.upstreamPublishers = publishers;
+        this.rank = rankOf(publishers);
+        this.tracksStaleness = tracksStaleness(publishers);
+        setMetrics(metricsOf(publishers));
+        if (isTraced(publishers)) {
+            markTraced();
+        }
         upstreamSubscriptions = new VarSubscriber[publishers.length];
-        for (int i = 0; i < publishers.length; ++i) {
-            upstreamSubscriptions[i] = createAndSubscribe(publishers[i], this);
+    }
+
+    /**
+     * Subscribes to the upstream publishers. Must be called once, after the constructor of the subclass completed.
+     */
+    final InternalDerivedValuePublisher<T> connect() {
+        expungeCollected();
+        InternalPropagation propagation = InternalPropagation.enterIsolated();
+        try {
+            for (int i = 0; i < upstreamPublishers.length; ++i) {
+                upstreamSubscriptions[i] = createAndSubscribe(upstreamPublishers[i], this, i);
+            }
+            for (int i = 0; !lazy && i < upstreamPublishers.length; ++i) {
+                upstreamSubscriptions[i].request(1);
+            }
+            if (!lazy && upstreamPublishers.length == 0) {
+                pendingSignals |= VALUE;
+                propagation.add(this);
+            }
+        } finally {
+            propagation.exit();
+        }
+
+        synchronized (this) {
+            // nobody can observe this publisher yet
+            suspendable = !lazy && tracksStaleness && canSuspend();
+            suspended = suspendable;
+            if (suspended) {
+                consumeChanges();
+            }
+        }
+        if (!lazy && !suspendable) {
+            for (VarSubscriber<?> upstreamSubscription : upstreamSubscriptions) {
+                InternalPublisher<?> upstream = upstreamSubscription.observe(true);
+                if (upstream != null) {
+                    upstream.addObserver();
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Publishers that must see every upstream change (to process it incrementally, or to find their upstream
+     * publishers) override this method to return false.
+     */
+    boolean canSuspend() {
+        return true;
+    }
+
+    /**
+     * Resumes this publisher and the suspended publishers it depends on when it gets its first observer. Stale
+     * publishers are re-calculated once, in the current wave.
+     */
+    @Override
+    final void addObserver() {
+        InternalPropagation propagation = InternalPropagation.enter();
+        try {
+            ArrayDeque<InternalDerivedValuePublisher<?>> pending = new ArrayDeque<>();
+            ArrayList<InternalDerivedValuePublisher<?>> resumed = new ArrayList<>();
+            pending.push(this);
+            InternalDerivedValuePublisher<?> publisher;
+            while ((publisher = pending.poll()) != null) {
+                if (publisher.resume(propagation, pending)) {
+                    resumed.add(publisher);
+                }
+            }
+            // request again once all of them are eager, so that no upstream publisher is refreshed out of order
+            for (InternalDerivedValuePublisher<?> resumedPublisher : resumed) {
+                for (VarSubscriber<?> upstreamSubscription : resumedPublisher.upstreamSubscriptions) {
+                    upstreamSubscription.resume();
+                }
+            }
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    /**
+     * Counts a new observer, and resumes this publisher if it is the first one.
+     *
+     * @return true if this publisher was resumed
+     */
+    private boolean resume(InternalPropagation propagation, ArrayDeque<InternalDerivedValuePublisher<?>> pending) {
+        synchronized (this) {
+            if (observers++ != 0 || !suspendable) {
+                return false;
+            }
+            suspended = false;
+            observeUpstream(true, pending);
+            if (stale) {
+                pendingSignals |= VALUE;
+                propagation.add(this);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Suspends this publisher when its last observer is gone, and the publishers it depends on that are not
+     * observed otherwise.
+     */
+    @Override
+    final void removeObserver() {
+        ArrayDeque<InternalDerivedValuePublisher<?>> pending = new ArrayDeque<>();
+        pending.push(this);
+        InternalDerivedValuePublisher<?> publisher;
+        while ((publisher = pending.poll()) != null) {
+            publisher.suspend(pending);
+        }
+    }
+
+    private void suspend(ArrayDeque<InternalDerivedValuePublisher<?>> pending) {
+        synchronized (this) {
+            if (--observers != 0 || !suspendable) {
+                return;
+            }
+            suspended = true;
+            // the current value is up to date, changes are tracked from here on
+            consumeChanges();
+            observeUpstream(false, pending);
         }
-        for (int i = 0; !lazy && i < publishers.length; ++i) {
-            upstreamSubscriptions[i].request(1);
+    }
+
+    /**
+     * Adds the derived upstream publishers whose observers changed to {@code pending}, source publishers do not
+     * count their observers.
+     */
+    private void observeUpstream(boolean observe, ArrayDeque<InternalDerivedValuePublisher<?>> pending) {
+        for (VarSubscriber<?> upstreamSubscription : upstreamSubscriptions) {
+            InternalPublisher<?> upstream = upstreamSubscription.observe(observe);
+            if (upstream instanceof InternalDerivedValuePublisher) {
+                pending.push((InternalDerivedValuePublisher<?>) upstream);
+            }
+        }
+    }
+
+    /**
+     * Cancels the upstream subscriptions of derived publishers that have been garbage collected.
+     */
+    static void expungeCollected() {
+        Reference<? extends InternalDerivedValuePublisher<?>> reference;
+        while ((reference = COLLECTED.poll()) != null) {
+            ((VarSubscriber<?>) reference).cancel();
         }
+        reportCollected();
     }
 
-    private static <A, T> VarSubscriber<A> createAndSubscribe(Publisher<A> publisher, InternalDerivedValuePublisher<T> self) {
-        VarSubscriber<A> subscriber = new VarSubscriber<>(self);
+    /**
+     * Retains this publisher while it has subscriptions, otherwise its upstream publishers only reference it weakly.
+     */
+    @Override
+    final void subscriptionsChanged() {
+        synchronized (this) {
+            boolean retain = !getDownStreamSubscriptions().isEmpty();
+            if (retain != retained) {
+                retained = retain;
+                retainUpstream(retain);
+            }
+        }
+    }
+
+    /**
+     * @return true if the upstream subscriptions must retain this publisher, the caller must hold the lock of this
+     * publisher
+     */
+    final boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * Called with the lock of this publisher held. Publishers with additional upstream subscriptions override
+     * this method.
+     */
+    void retainUpstream(boolean retain) {
+        for (VarSubscriber<?> upstreamSubscription : upstreamSubscriptions) {
+            if (upstreamSubscription != null) {
+                upstreamSubscription.retain(retain);
+            }
+        }
+    }
+
+    private static int rankOf(Publisher<?>[] publishers) {
+        int max = 0;
+        for (Publisher<?> publisher : publishers) {
+            max = Math.max(max, rankOf(publisher));
+        }
+        return max + 1;
+    }
+
+    private static int rankOf(Publisher<?> publisher) {
+        if (publisher instanceof Var) {
+            return ((Var<?>) publisher).impl.getRank();
+        }
+        if (publisher instanceof SplitProcessor) {
+            return rankOf(((SplitProcessor<?, ?>) publisher).getUpstream());
+        }
+        return 0;
+    }
+
+    private static VarMetrics metricsOf(Publisher<?>[] publishers) {
+        for (Publisher<?> publisher : publishers) {
+            if (publisher instanceof Var) {
+                VarMetrics metrics = ((Var<?>) publisher).impl.getMetrics();
+                if (metrics != null) {
+                    return metrics;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isTraced(Publisher<?>[] publishers) {
+        for (Publisher<?> publisher : publishers) {
+            if (publisher instanceof Var && ((Var<?>) publisher).impl.isTraced()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean tracksStaleness(Publisher<?>[] publishers) {
+        for (Publisher<?> publisher : publishers) {
+            if (!(publisher instanceof Var)) {
+                return false;
+            }
+            InternalPublisher<?> impl = ((Var<?>) publisher).impl;
+            if (impl.isLazy() && !(impl instanceof InternalDerivedValuePublisher
+                    && ((InternalDerivedValuePublisher<?>) impl).tracksStaleness)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <A, T> VarSubscriber<A> createAndSubscribe(Publisher<A> publisher, InternalDerivedValuePublisher<T> self,
+                                                              int index) {
+        VarSubscriber<A> subscriber = new VarSubscriber<>(self, index);
         publisher.subscribe(subscriber);
         return subscriber;
     }
 
-    private void reCalculate() {
-        if (lazy) {
+    final void reCalculate() {
+        if (beginReCalculate()) {
+            evaluateQuietly();
+            endReCalculate();
+        }
+    }
+
+    /**
+     * Processes the pending signals.
+     *
+     * @return true if the publisher must be evaluated
+     */
+    final boolean beginReCalculate() {
+        int signals = pendingSignals;
+        pendingSignals = 0;
+        if ((signals & ERROR) != 0) {
+            Throwable error = pendingError;
+            pendingError = null;
+            for (InternalDownStreamSubscription subscription : getDownStreamSubscriptions()) {
+                subscription.offerError(error);
+            }
+        }
+        if ((signals & COMPLETE) != 0) {
+            complete();
+        }
+        if ((signals & VALUE) == 0) {
+            return false;
+        }
+
+        if (tracksStaleness) {
+            boolean lazyOrSuspended = isLazy();
+            if (lazyOrSuspended) {
+                // an eager publisher requests from its upstream publishers, so the wave has refreshed them already
+                for (Publisher<?> upstreamPublisher : upstreamPublishers) {
+                    InternalPublisher<?> upstream = ((Var<?>) upstreamPublisher).impl;
+                    if (upstream.isLazy()) {
+                        upstream.refresh();
+                    }
+                }
+            }
+            // a new upstream value from here on marks this publisher as stale again
+            if (stale) {
+                stale = false;
+            }
+            if (lazyOrSuspended && !consumeChanges()) {
+                // the stale upstream publishers were refreshed to equivalent values
+                return false;
+            }
+        } else if (lazy) {
             for (VarSubscriber upstreamSubscription : upstreamSubscriptions) {
                 if (upstreamSubscription.peek()) {
-                    return;
+                    return false;
                 }
             }
         }
+        return true;
+    }
 
+    /**
+     * Discards the items that were not delivered. Eager publishers receive every item, and are only scheduled
+     * when an upstream publisher changed.
+     *
+     * @return true if an upstream publisher offered a value since the last re-calculation
+     */
+    private boolean consumeChanges() {
+        boolean changed = upstreamSubscriptions.length == 0;
+        for (VarSubscriber upstreamSubscription : upstreamSubscriptions) {
+            upstreamSubscription.consumeItem();
+            changed |= upstreamSubscription.takeChanged();
+        }
+        return changed;
+    }
 
-        T oldValue = getValue();
-        T newValue;
+    /**
+     * Evaluates and records the outcome for {@link #endReCalculate()}.
+     */
+    final void evaluateQuietly() {
+        VarMetrics metrics = getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0L;
+        boolean changed;
         try {
-            newValue = supplier.get();
+            changed = evaluate();
         } catch (Throwable e) {
+            evaluationError = e;
+            pendingSignals |= FAILED;
+            if (metrics != null) {
+                metrics.failed(getId(), System.nanoTime() - start, e);
+            }
+            return;
+        }
+        if (changed) {
+            pendingSignals |= CHANGED;
+        }
+        if (metrics != null) {
+            metrics.evaluated(getId(), System.nanoTime() - start, changed);
+        }
+    }
+
+    /**
+     * @return the outcome of {@link #evaluateQuietly()}, until {@link #endReCalculate()} offers it
+     */
+    final VarTracer.Span.Outcome getOutcome() {
+        if ((pendingSignals & FAILED) != 0) {
+            return VarTracer.Span.Outcome.FAILED;
+        }
+        return (pendingSignals & CHANGED) != 0 ? VarTracer.Span.Outcome.CHANGED : VarTracer.Span.Outcome.UNCHANGED;
+    }
+
+    /**
+     * Offers the outcome of {@link #evaluateQuietly()} downstream.
+     */
+    final void endReCalculate() {
+        evaluated();
+        int outcome = pendingSignals & (CHANGED | FAILED);
+        pendingSignals &= ~(CHANGED | FAILED);
+        if ((outcome & FAILED) != 0) {
+            Throwable e = evaluationError;
+            evaluationError = null;
             updateThrowable(e);
             for (InternalDownStreamSubscription subscription : getDownStreamSubscriptions()) {
                 subscription.offerError(e);
@@ -56,30 +450,233 @@ final class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
             return;
         }
 
-        updateValue(newValue);
         updateThrowable(null);
 
-        if (!Objects.equals(oldValue, newValue)) {
-            for (InternalDownStreamSubscription<T> subscription : getDownStreamSubscriptions()) {
-                subscription.offerValue(newValue);
+        if (outcome != 0) {
+            offerValueToAll();
+        }
+    }
+
+    /**
+     * Schedules this publisher in the active wave, to process a signal from upstream.
+     */
+    private void schedule(int signal) {
+        pendingSignals |= signal;
+        InternalPropagation.schedule(this);
+    }
+
+    /**
+     * Marks this publisher and its lazy (or suspended) downstream publishers as stale, and schedules those with
+     * outstanding downstream demand. Does nothing if this publisher is eager, its new value is pushed instead.
+     */
+    final void invalidate() {
+        if (!tracksStaleness || !isLazy() || stale) {
+            return;
+        }
+
+        stale = true;
+        ArrayDeque<InternalDerivedValuePublisher<?>> pending = null;
+        InternalDerivedValuePublisher<?> publisher = this;
+        do {
+            boolean demand = false;
+            for (InternalDownStreamSubscription<?> subscription : publisher.getDownStreamSubscriptions()) {
+                InternalDerivedValuePublisher<?> downstream = subscription.getDownstreamPublisher();
+                // a suspended publisher does not pull, its request is left over from before it was suspended
+                demand |= subscription.hasDemand() && (downstream == null || !downstream.suspended);
+                if (downstream != null && downstream.tracksStaleness && downstream.isLazy() && !downstream.stale) {
+                    downstream.stale = true;
+                    if (pending == null) {
+                        pending = new ArrayDeque<>();
+                    }
+                    pending.push(downstream);
+                }
             }
+            if (demand) {
+                publisher.schedule(VALUE);
+            }
+            publisher = pending != null ? pending.poll() : null;
+        } while (publisher != null);
+    }
+
+    @Override
+    final void refresh() {
+        if (!tracksStaleness) {
+            requestUpstream(1);
+            return;
+        }
+        if (!stale) {
+            return;
+        }
+
+        InternalPropagation propagation = InternalPropagation.enterIsolated();
+        try {
+            // schedule this publisher and the stale publishers it depends on, the wave re-calculates them in
+            // rank order, so every upstream publisher is up to date when it is read
+            ArrayDeque<InternalDerivedValuePublisher<?>> pending = new ArrayDeque<>();
+            pending.push(this);
+            InternalDerivedValuePublisher<?> publisher;
+            while ((publisher = pending.poll()) != null) {
+                if (publisher.scheduledIn == propagation) {
+                    continue;
+                }
+                publisher.pendingSignals |= VALUE;
+                propagation.add(publisher);
+                for (Publisher<?> upstreamPublisher : publisher.upstreamPublishers) {
+                    InternalPublisher<?> upstream = ((Var<?>) upstreamPublisher).impl;
+                    if (upstream.isLazy() && ((InternalDerivedValuePublisher<?>) upstream).stale) {
+                        pending.push((InternalDerivedValuePublisher<?>) upstream);
+                    }
+                }
+            }
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    /**
+     * Called on the propagating thread after {@link #evaluateQuietly()}, before the outcome is offered downstream.
+     */
+    void evaluated() {
+    }
+
+    /**
+     * Raises the rank of this publisher to {@code newRank}, and the ranks of its downstream publishers so that
+     * each stays above all of its upstream publishers.
+     */
+    final void raiseRank(int newRank) {
+        rank = newRank;
+        ArrayDeque<InternalDerivedValuePublisher<?>> pending = new ArrayDeque<>();
+        pending.push(this);
+        InternalDerivedValuePublisher<?> publisher;
+        while ((publisher = pending.poll()) != null) {
+            for (InternalDownStreamSubscription<?> subscription : publisher.getDownStreamSubscriptions()) {
+                InternalDerivedValuePublisher<?> downstream = subscription.getDownstreamPublisher();
+                if (downstream != null && downstream.rank <= publisher.rank) {
+                    downstream.rank = publisher.rank + 1;
+                    pending.push(downstream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called before this publisher is scheduled because the upstream publisher at {@code index} signalled a new
+     * value. Publishers that process changes incrementally override this method.
+     */
+    void upstreamChanged(int index) {
+    }
+
+    /**
+     * Calculates and stores the new value, unless it is equivalent to the current value under a tolerance (see
+     * {@link InternalTolerance}). Primitive publishers override this method.
+     *
+     * @return true if the value changed
+     */
+    boolean evaluate() {
+        T oldValue = getValue();
+        InternalMemo<T> memo = this.memo;
+        T newValue = memo != null ? memo.get(upstreamValues(), supplier) : supplier.get();
+        if (oldValue == newValue) {
+            return false;
+        }
+        if (oldValue != null && newValue != null && equivalence.equivalent(oldValue, newValue)) {
+            if (!InternalTolerance.keepsCurrentValue(equivalence)) {
+                updateValue(newValue);
+            }
+            return false;
+        }
+        updateValue(newValue);
+        return true;
+    }
+
+    /**
+     * Caches the results of the supplier by the values of the upstream publishers. Only valid if the supplier
+     * is a function of these values.
+     *
+     * @return the cache, or null if the results of this publisher cannot be cached
+     */
+    InternalMemo<T> memoize(int maxEntries) {
+        if (supplier == null) {
+            return null;
+        }
+        for (Publisher<?> upstreamPublisher : upstreamPublishers) {
+            if (!(upstreamPublisher instanceof Var)) {
+                return null;
+            }
+        }
+        InternalMemo<T> memo = new InternalMemo<>(maxEntries);
+        this.memo = memo;
+        return memo;
+    }
+
+    private Object[] upstreamValues() {
+        Object[] values = new Object[upstreamPublishers.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = ((Var<?>) upstreamPublishers[i]).impl.getValue();
         }
+        return values;
     }
 
+    /**
+     * @return true if this publisher is lazy or suspended
+     */
     @Override
     boolean isLazy() {
+        return lazy || suspended;
+    }
+
+    @Override
+    boolean isDeclaredLazy() {
         return lazy;
     }
 
+    /**
+     * @return true if this publisher is eager, but suspended because nobody observes it
+     */
+    final boolean isSuspended() {
+        return suspended;
+    }
+
+    @Override
+    void collectUpstream(List<InternalPublisher<?>> inputs) {
+        for (Publisher<?> upstreamPublisher : upstreamPublishers) {
+            if (upstreamPublisher instanceof Var) {
+                inputs.add(((Var<?>) upstreamPublisher).impl);
+            }
+        }
+    }
+
+    @Override
+    int getRank() {
+        return rank;
+    }
+
+    /**
+     * Publishers that track their staleness do not pass on demand, they are scheduled when they become stale
+     * while there is demand.
+     */
     @Override
     protected void requestUpstream(long n) {
-        for (VarSubscriber upstreamSubscription : upstreamSubscriptions) {
-            upstreamSubscription.request(n);
+        if (tracksStaleness) {
+            refresh();
+            return;
+        }
+
+        InternalPropagation propagation = InternalPropagation.enterIsolated();
+        try {
+            for (VarSubscriber upstreamSubscription : upstreamSubscriptions) {
+                upstreamSubscription.request(n);
+            }
+        } finally {
+            propagation.exit();
         }
     }
 
     @Override
     protected boolean peekUpstream() {
+        if (tracksStaleness) {
+            return stale;
+        }
         for (VarSubscriber upstreamSubscription : upstreamSubscriptions) {
             if (upstreamSubscription.peek()) {
                 return true;
@@ -88,18 +685,75 @@ final class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
         return false;
     }
 
-    private static final class VarSubscriber<V> implements ErrorMappingSubscriber<V> {
-        private final InternalDerivedValuePublisher<?> publisher;
+    /**
+     * The subscription of a derived publisher to one of its upstream publishers. References the derived publisher
+     * weakly, and strongly while it is retained.
+     */
+    static final class VarSubscriber<V> extends WeakReference<InternalDerivedValuePublisher<?>>
+            implements ErrorMappingSubscriber<V> {
+        private final int index;
         private Subscription subscription;
+        private InternalDerivedValuePublisher<?> retained;
+        private boolean observing;
+        private volatile boolean changed = true;
+        /**
+         * The last evaluation of a computed publisher that read the upstream publisher, see
+         * {@link InternalComputedPublisher#recordRead}.
+         */
+        int readIn;
 
-        VarSubscriber(InternalDerivedValuePublisher<?> obj) {
-            this.publisher = obj;
+        VarSubscriber(InternalDerivedValuePublisher<?> obj, int index) {
+            super(obj, COLLECTED);
+            this.index = index;
         }
 
         void request(long n) {
             subscription.request(n);
         }
 
+        void cancel() {
+            InternalPublisher<?> upstream = observe(false);
+            if (upstream != null) {
+                upstream.removeObserver();
+            }
+            Subscription subscription = this.subscription;
+            if (subscription != null) {
+                // the reference queue holds on to this subscriber, but must not hold on to the upstream publisher
+                this.subscription = null;
+                subscription.cancel();
+            }
+        }
+
+        void retain(boolean retain) {
+            retained = retain ? get() : null;
+        }
+
+        /**
+         * Makes the derived publisher an observer of the upstream publisher, or stops it from being one. The
+         * caller must add or remove the observer.
+         *
+         * @return the upstream publisher, or null if nothing changed
+         */
+        InternalPublisher<?> observe(boolean observe) {
+            Subscription subscription = this.subscription;
+            if (observe == observing || !(subscription instanceof InternalDownStreamSubscription)) {
+                return null;
+            }
+            observing = observe;
+            return ((InternalDownStreamSubscription<?>) subscription).getPublisher();
+        }
+
+        /**
+         * Requests the next value again after the derived publisher was suspended.
+         */
+        void resume() {
+            Subscription subscription = this.subscription;
+            if (subscription instanceof InternalDownStreamSubscription
+                    && !((InternalDownStreamSubscription<?>) subscription).hasDemand()) {
+                subscription.request(1);
+            }
+        }
+
         @Override
         public void onSubscribe(Subscription s) {
             subscription = s;
@@ -107,7 +761,27 @@ final class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
 
         @Override
         public void onNext(V v) {
-            publisher.reCalculate();
+            onSignal();
+        }
+
+        /**
+         * Same as {@link #onNext(Object)}, used by {@link InternalDownStreamSubscription} to avoid materializing
+         * (boxing) the item which is not needed to re-calculate.
+         */
+        void onSignal() {
+            InternalDerivedValuePublisher<?> publisher = get();
+            if (publisher == null) {
+                cancel();
+                return;
+            }
+            if (publisher.suspended) {
+                // not requested again, until the publisher is resumed
+                changed = true;
+                publisher.invalidate();
+                return;
+            }
+            publisher.upstreamChanged(index);
+            publisher.schedule(VALUE);
             if (!publisher.isLazy()) {
                 subscription.request(1);
             }
@@ -115,26 +789,65 @@ final class InternalDerivedValuePublisher<T> extends InternalPublisher<T> {
 
         @Override
         public void onError(Throwable t) {
-            for (InternalDownStreamSubscription subscription : publisher.getDownStreamSubscriptions()) {
-                subscription.offerError(t);
+            InternalDerivedValuePublisher<?> publisher = get();
+            if (publisher == null) {
+                cancel();
+                return;
             }
+            publisher.pendingError = t;
+            publisher.schedule(ERROR);
         }
 
         @Override
         public void onComplete() {
-            for (InternalDownStreamSubscription subscription : publisher.getDownStreamSubscriptions()) {
-                subscription.complete();
+            InternalDerivedValuePublisher<?> publisher = get();
+            if (publisher != null) {
+                publisher.schedule(COMPLETE);
             }
         }
 
         @Override
         public long mapError(Throwable t, long n) {
-            for (InternalDownStreamSubscription subscription : publisher.getDownStreamSubscriptions()) {
-                subscription.offerError(t);
-            }
+            onError(t);
             return 0;
         }
 
+        /**
+         * @return the derived publisher, or null if it has been garbage collected
+         */
+        InternalDerivedValuePublisher<?> getPublisher() {
+            return get();
+        }
+
+        /**
+         * Called when the upstream publisher offers a new value, whether or not it can be delivered. Only lazy
+         * and suspended publishers keep track of the changes, eager ones are scheduled by {@link #onSignal()}.
+         */
+        void valueOffered() {
+            InternalDerivedValuePublisher<?> publisher = get();
+            if (publisher != null && publisher.isLazy()) {
+                changed = true;
+                publisher.invalidate();
+            }
+        }
+
+        /**
+         * @return true if a value was offered since the last call
+         */
+        boolean takeChanged() {
+            if (!changed) {
+                return false;
+            }
+            changed = false;
+            return true;
+        }
+
+        void consumeItem() {
+            if (subscription instanceof InternalDownStreamSubscription) {
+                ((InternalDownStreamSubscription) subscription).consumeItem();
+            }
+        }
+
         boolean peek() {
             return subscription instanceof PeekingSubscription && ((PeekingSubscription) subscription).peek();
         }
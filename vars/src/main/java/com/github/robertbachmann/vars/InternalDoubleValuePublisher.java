@@ -0,0 +1,79 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.Executor;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalDoubleValuePublisher extends InternalPublisher.InternalSourcePublisher<Double> implements DoubleSupplier {
+    private volatile double value;
+    private volatile Double boxed;
+    private double committedValue;
+
+    InternalDoubleValuePublisher(double value) {
+        this.value = value;
+    }
+
+    void setValue(double newValue) {
+        Executor executor = getExecutor();
+        if (executor != null) {
+            setValueLater(newValue, executor);
+        } else {
+            write(newValue);
+        }
+    }
+
+    @Override
+    void setValueNow(Double newValue) {
+        write(newValue);
+    }
+
+    private void write(double newValue) {
+        InternalPropagation propagation = InternalPropagation.enter();
+        try {
+            beforeWrite(propagation);
+            value = newValue;
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    @Override
+    public double getAsDouble() {
+        return value;
+    }
+
+    @Override
+    Double getValue() {
+        double current = value;
+        Double result = boxed;
+        if (result == null || Double.doubleToRawLongBits(result) != Double.doubleToRawLongBits(current)) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+
+    @Override
+    void saveCommittedValue() {
+        committedValue = value;
+    }
+
+    @Override
+    boolean commit() {
+        double oldValue = committedValue;
+        double newValue = value;
+        return Double.doubleToLongBits(oldValue) != Double.doubleToLongBits(newValue);
+    }
+
+    @Override
+    void restoreCommittedValue() {
+        value = committedValue;
+    }
+
+    @Override
+    void restoreValue(Double value) {
+        this.value = value;
+    }
+}
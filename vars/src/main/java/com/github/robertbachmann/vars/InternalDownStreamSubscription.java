@@ -4,26 +4,47 @@ import com.github.robertbachmann.vars.support.ErrorMappingSubscriber;
 import com.github.robertbachmann.vars.support.PeekingSubscription;
 import org.reactivestreams.Subscriber;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Internal implementation class
+ * <p>
+ * Items are delivered by a queue-drain loop: whoever increments {@code wip} from zero drains, and every signal
+ * that arrives while a drain is in progress (a re-entrant {@link #request} or {@link #offerValue} from within
+ * {@code onNext}, or a concurrent one from another thread) only increments {@code wip} and is picked up by the
+ * draining thread before it leaves. This serializes {@code onNext} and trampolines re-entrant calls.
+ * <p>
+ * There is one instance per edge of the graph, so the atomic state is kept in volatile fields of the instance
+ * itself and updated through field updaters, instead of in separate atomic objects. Stores that only need to be
+ * visible eventually (clearing the demand or the error) use {@code lazySet}, i.e. release semantics.
  */
 final class InternalDownStreamSubscription<T> implements PeekingSubscription {
-    private final RecursionFlag recursionFlag = new RecursionFlag();
-    private final AtomicLong max = new AtomicLong();
-    private final AtomicInteger theState = new AtomicInteger(State.SUBSCRIPTION_PENDING);
+    private static final AtomicIntegerFieldUpdater<InternalDownStreamSubscription> WIP =
+            AtomicIntegerFieldUpdater.newUpdater(InternalDownStreamSubscription.class, "wip");
+    private static final AtomicLongFieldUpdater<InternalDownStreamSubscription> MAX =
+            AtomicLongFieldUpdater.newUpdater(InternalDownStreamSubscription.class, "max");
+    private static final AtomicIntegerFieldUpdater<InternalDownStreamSubscription> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(InternalDownStreamSubscription.class, "theState");
+    private static final AtomicReferenceFieldUpdater<InternalDownStreamSubscription, Throwable> THROWABLE =
+            AtomicReferenceFieldUpdater.newUpdater(InternalDownStreamSubscription.class, Throwable.class, "throwable");
+
+    private volatile int wip;
+    private volatile long max;
+    private volatile int theState;
+    private volatile Throwable throwable;
     private final Subscriber<? super T> subscriber;
     private final InternalPublisher<T> publisher;
-    private final AtomicReference<Throwable> throwableReference;
+    int slot = -1; // guarded by InternalDownStreamSubscriptions
 
     InternalDownStreamSubscription(InternalPublisher<T> publisher, Subscriber<? super T> subscriber,
                                    Throwable currentThrowable) {
         this.publisher = publisher;
         this.subscriber = subscriber;
-        this.throwableReference = new AtomicReference<>(currentThrowable);
+        // published to other threads by InternalDownStreamSubscriptions.add()
+        STATE.lazySet(this, State.SUBSCRIPTION_PENDING);
+        THROWABLE.lazySet(this, currentThrowable);
     }
 
     @Override
@@ -34,36 +55,35 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
         }
 
         for (; ; ) {
-            final long currentBound = max.get();
+            final long currentBound = max;
             if (currentBound == Long.MAX_VALUE)
                 break;
             final long newBound = n != Long.MAX_VALUE ? safeAdd(currentBound, n) : Long.MAX_VALUE;
-            if (max.compareAndSet(currentBound, newBound)) {
+            if (MAX.compareAndSet(this, currentBound, newBound)) {
                 break;
             }
         }
 
-        Throwable t = throwableReference.get();
+        Throwable t = throwable;
         if (t != null) {
             offerError(t);
         }
 
-        if (!recursionFlag.isSet() && theState.compareAndSet(State.ITEM_AVAILABLE, State.DEFAULT)) {
-            if (!tryOnNext(publisher.getValue())) {
-                theState.compareAndSet(State.DEFAULT, State.ITEM_AVAILABLE);
-            }
+        if (theState == State.ITEM_AVAILABLE) {
+            drain();
         } else if (publisher.isLazy()) {
             publisher.requestUpstream(n);
         }
+        // otherwise the next offerValue() drains and sees the new demand
     }
 
     @Override
     public void cancel() {
-        boolean wasActive = theState.compareAndSet(State.DEFAULT, State.TERMINAL)
-                || theState.compareAndSet(State.ITEM_AVAILABLE, State.TERMINAL);
+        boolean wasActive = STATE.compareAndSet(this, State.DEFAULT, State.TERMINAL)
+                || STATE.compareAndSet(this, State.ITEM_AVAILABLE, State.TERMINAL);
 
         if (wasActive) {
-            max.set(0);
+            MAX.lazySet(this, 0);
             publisher.cancelSubscription(this);
         }
     }
@@ -81,7 +101,7 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
     private boolean tryDecrementMax(final long count) {
         for (long i = 0; i < count; ++i) {
             for (; ; ) { // try decrement 1
-                long n = max.get();
+                long n = max;
 
                 if (n == Long.MAX_VALUE) {
                     return true; // no tracking necessary
@@ -92,46 +112,114 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
                 }
 
                 long nextN = n - 1;
-                if (max.compareAndSet(n, nextN))
+                if (MAX.compareAndSet(this, n, nextN))
                     break;
             }
         }
         return true;
     }
 
-    private boolean tryOnNext(T value) {
-        if (max.get() < 1 || recursionFlag.isSet()) {
-            return false;
+    private void drain() {
+        if (WIP.getAndIncrement(this) != 0) {
+            return;
         }
 
-        if (!tryDecrementMax(1))
-            return false;
+        int missed = 1;
+        for (; ; ) {
+            if (max > 0 && STATE.compareAndSet(this, State.ITEM_AVAILABLE, State.DEFAULT)) {
+                if (tryDecrementMax(1)) {
+                    onNext();
+                } else {
+                    STATE.compareAndSet(this, State.DEFAULT, State.ITEM_AVAILABLE);
+                }
+            }
 
-        recursionFlag.set();
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    private void onNext() {
         try {
-            subscriber.onNext(value);
-            recursionFlag.clear();
+            if (subscriber instanceof InternalDerivedValuePublisher.VarSubscriber) {
+                ((InternalDerivedValuePublisher.VarSubscriber) subscriber).onSignal();
+            } else {
+                InternalTrace trace = publisher.isTraced() ? InternalPropagation.currentTrace() : null;
+                if (trace == null) {
+                    subscriber.onNext(publisher.getValue());
+                } else {
+                    onNextTraced(trace);
+                }
+                VarMetrics metrics = publisher.getMetrics();
+                if (metrics != null) {
+                    metrics.delivered(publisher.getId());
+                }
+            }
         } catch (Throwable t) {
-            recursionFlag.clear();
             terminalError(t);
-            return false;
         }
+    }
 
-        return true;
+    private void onNextTraced(InternalTrace trace) {
+        long start = System.nanoTime();
+        try {
+            subscriber.onNext(publisher.getValue());
+        } catch (Throwable t) {
+            trace.delivered(publisher.getId(), start, VarTracer.Span.Outcome.FAILED);
+            throw t;
+        }
+        trace.delivered(publisher.getId(), start, VarTracer.Span.Outcome.DELIVERED);
     }
 
-    void offerValue(T value) {
-        throwableReference.set(null);
-        if (theState.compareAndSet(State.DEFAULT, State.DEFAULT) ||
-                theState.compareAndSet(State.ITEM_AVAILABLE, State.DEFAULT)) {
-            if (!tryOnNext(value)) {
-                theState.compareAndSet(State.DEFAULT, State.ITEM_AVAILABLE);
-            }
+    void offerValue() {
+        if (throwable != null) {
+            THROWABLE.lazySet(this, null);
+        }
+        if (subscriber instanceof InternalDerivedValuePublisher.VarSubscriber) {
+            ((InternalDerivedValuePublisher.VarSubscriber<?>) subscriber).valueOffered();
         }
+        if (STATE.compareAndSet(this, State.DEFAULT, State.ITEM_AVAILABLE) || theState == State.ITEM_AVAILABLE) {
+            drain();
+        }
+    }
+
+    /**
+     * @return the derived publisher that subscribed, or null if the subscriber is not a derived publisher
+     */
+    InternalDerivedValuePublisher<?> getDownstreamPublisher() {
+        if (subscriber instanceof InternalDerivedValuePublisher.VarSubscriber) {
+            return ((InternalDerivedValuePublisher.VarSubscriber<?>) subscriber).getPublisher();
+        }
+        return null;
+    }
+
+    InternalPublisher<T> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return true if the subscriber is not a derived publisher
+     */
+    boolean isExternal() {
+        return !(subscriber instanceof InternalDerivedValuePublisher.VarSubscriber);
+    }
+
+    boolean hasDemand() {
+        int state = theState;
+        return max > 0 && (state == State.DEFAULT || state == State.ITEM_AVAILABLE);
+    }
+
+    /**
+     * Discards an item that was not delivered, because the downstream publisher read the value directly.
+     */
+    void consumeItem() {
+        STATE.compareAndSet(this, State.ITEM_AVAILABLE, State.DEFAULT);
     }
 
     void offerError(Throwable t) {
-        throwableReference.set(t);
+        throwable = t;
         if (!(subscriber instanceof ErrorMappingSubscriber)) {
             terminalError(t);
         } else {
@@ -140,24 +228,24 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
     }
 
     void subscribeDone() {
-        theState.compareAndSet(State.SUBSCRIPTION_PENDING, State.DEFAULT);
+        STATE.compareAndSet(this, State.SUBSCRIPTION_PENDING, State.DEFAULT);
     }
 
     private void handleError(Throwable t) {
 
 
-        int state = theState.get();
+        int state = theState;
         if (state != State.DEFAULT && state != State.ITEM_AVAILABLE) {
             return;
         }
 
         try {
-            throwableReference.compareAndSet(t, null);
+            THROWABLE.compareAndSet(this, t, null);
 
-            long n = ((ErrorMappingSubscriber) subscriber).mapError(t, max.get());
+            long n = ((ErrorMappingSubscriber) subscriber).mapError(t, max);
 
             if (n < 0) {
-                throwableReference.compareAndSet(null, t);
+                THROWABLE.compareAndSet(this, null, t);
             } else {
                 tryDecrementMax(n);
             }
@@ -168,8 +256,8 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
     }
 
     private void terminalError(Throwable t) {
-        boolean wasActive = theState.compareAndSet(State.DEFAULT, State.TERMINAL)
-                || theState.compareAndSet(State.ITEM_AVAILABLE, State.TERMINAL);
+        boolean wasActive = STATE.compareAndSet(this, State.DEFAULT, State.TERMINAL)
+                || STATE.compareAndSet(this, State.ITEM_AVAILABLE, State.TERMINAL);
 
         if (wasActive) {
             subscriber.onError(t);
@@ -177,8 +265,8 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
     }
 
     void complete() {
-        boolean wasActive = theState.compareAndSet(State.DEFAULT, State.TERMINAL)
-                || theState.compareAndSet(State.ITEM_AVAILABLE, State.TERMINAL);
+        boolean wasActive = STATE.compareAndSet(this, State.DEFAULT, State.TERMINAL)
+                || STATE.compareAndSet(this, State.ITEM_AVAILABLE, State.TERMINAL);
         if (wasActive) {
             subscriber.onComplete();
         }
@@ -186,7 +274,7 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
 
     @Override
     public boolean peek() {
-        boolean fresh = theState.get() == State.ITEM_AVAILABLE;
+        boolean fresh = theState == State.ITEM_AVAILABLE;
         return fresh || publisher.peekUpstream();
     }
 
@@ -199,23 +287,4 @@ final class InternalDownStreamSubscription<T> implements PeekingSubscription {
         private State() {
         }
     }
-
-    private static final class RecursionFlag extends ThreadLocal<Object> {
-        boolean isSet() {
-            return get() != null;
-        }
-
-        void set() {
-            set(Boolean.TRUE);
-        }
-
-        void clear() {
-            set(null);
-        }
-
-        @Override
-        public String toString() {
-            return isSet() ? "ThreadLocalFlag(true)" : "ThreadLocalFlag(false)";
-        }
-    }
 }
@@ -0,0 +1,148 @@
+package com.github.robertbachmann.vars;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Registry of the subscriptions of a publisher. Subscriptions are appended to an array and removed by clearing
+ * their slot, so that {@link #add} and {@link #remove} are amortized O(1). The array is compacted into a new array
+ * once more than half of its slots are cleared. Iteration does not lock: it reads the array that was current when
+ * it started and skips cleared slots, so concurrent changes are either seen or not, but never cause an error.
+ */
+final class InternalDownStreamSubscriptions<T> implements Iterable<InternalDownStreamSubscription<T>> {
+    private static final int MIN_CAPACITY = 4;
+    private static final InternalDownStreamSubscription<?>[] EMPTY = new InternalDownStreamSubscription<?>[0];
+
+    private volatile InternalDownStreamSubscription<?>[] slots = EMPTY;
+    private volatile int size;
+    private int count;
+
+    synchronized void add(InternalDownStreamSubscription<T> subscription) {
+        InternalDownStreamSubscription<?>[] current = slots;
+        int n = size;
+        if (n == current.length) {
+            current = copy(current, n, Math.max(MIN_CAPACITY, count * 2));
+            n = count;
+        }
+        subscription.slot = n;
+        current[n] = subscription;
+        count++;
+        size = n + 1; // publishes the new element
+    }
+
+    synchronized void remove(InternalDownStreamSubscription<T> subscription) {
+        InternalDownStreamSubscription<?>[] current = slots;
+        int index = subscription.slot;
+        if (index < 0 || index >= size || current[index] != subscription) {
+            return;
+        }
+        current[index] = null;
+        subscription.slot = -1;
+        count--;
+
+        if (count < size / 2 && size > MIN_CAPACITY) {
+            copy(current, size, Math.max(MIN_CAPACITY, count * 2));
+        }
+    }
+
+    /**
+     * Copies the live subscriptions of {@code current} into a new array and publishes it. The array is published
+     * before the smaller size: iteration reads the size first, so it never pairs the new size with the old array,
+     * whose live subscriptions may lie beyond it.
+     */
+    private InternalDownStreamSubscription<?>[] copy(InternalDownStreamSubscription<?>[] current, int n,
+                                                     int capacity) {
+        InternalDownStreamSubscription<?>[] newSlots = new InternalDownStreamSubscription<?>[capacity];
+        int j = 0;
+        for (int i = 0; i < n; ++i) {
+            InternalDownStreamSubscription<?> subscription = current[i];
+            if (subscription != null) {
+                subscription.slot = j;
+                newSlots[j++] = subscription;
+            }
+        }
+        slots = newSlots;
+        size = j;
+        return newSlots;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Unlike {@link #size()}, sees all preceding changes by other threads.
+     */
+    synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Allocation free iteration, as long as {@code action} does not capture.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super InternalDownStreamSubscription<T>> action) {
+        int n = size;
+        InternalDownStreamSubscription<?>[] current = slots;
+        for (int i = 0, end = Math.min(n, current.length); i < end; ++i) {
+            InternalDownStreamSubscription<?> subscription = current[i];
+            if (subscription != null) {
+                action.accept((InternalDownStreamSubscription<T>) subscription);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #forEach}, but the subscriptions are processed on {@code pool}. Returns after all subscriptions
+     * have been processed.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachInParallel(ForkJoinPool pool, Consumer<? super InternalDownStreamSubscription<T>> action) {
+        int n = size;
+        InternalDownStreamSubscription<T>[] current = (InternalDownStreamSubscription<T>[]) slots;
+        InternalParallelForEach.forEach(pool, current, 0, Math.min(n, current.length), action);
+    }
+
+    @Override
+    public Iterator<InternalDownStreamSubscription<T>> iterator() {
+        int n = size;
+        InternalDownStreamSubscription<?>[] current = slots;
+        int end = Math.min(n, current.length);
+
+        return new Iterator<InternalDownStreamSubscription<T>>() {
+            private int index;
+            private InternalDownStreamSubscription<?> next = advance();
+
+            private InternalDownStreamSubscription<?> advance() {
+                while (index < end) {
+                    InternalDownStreamSubscription<?> subscription = current[index++];
+                    if (subscription != null) {
+                        return subscription;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public InternalDownStreamSubscription<T> next() {
+                InternalDownStreamSubscription<?> result = next;
+                if (result == null) {
+                    throw new NoSuchElementException();
+                }
+                next = advance();
+                return (InternalDownStreamSubscription<T>) result;
+            }
+        };
+    }
+}
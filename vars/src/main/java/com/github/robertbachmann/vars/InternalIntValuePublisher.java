@@ -0,0 +1,79 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.Executor;
+import java.util.function.IntSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalIntValuePublisher extends InternalPublisher.InternalSourcePublisher<Integer> implements IntSupplier {
+    private volatile int value;
+    private volatile Integer boxed;
+    private int committedValue;
+
+    InternalIntValuePublisher(int value) {
+        this.value = value;
+    }
+
+    void setValue(int newValue) {
+        Executor executor = getExecutor();
+        if (executor != null) {
+            setValueLater(newValue, executor);
+        } else {
+            write(newValue);
+        }
+    }
+
+    @Override
+    void setValueNow(Integer newValue) {
+        write(newValue);
+    }
+
+    private void write(int newValue) {
+        InternalPropagation propagation = InternalPropagation.enter();
+        try {
+            beforeWrite(propagation);
+            value = newValue;
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    @Override
+    public int getAsInt() {
+        return value;
+    }
+
+    @Override
+    Integer getValue() {
+        int current = value;
+        Integer result = boxed;
+        if (result == null || result != current) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+
+    @Override
+    void saveCommittedValue() {
+        committedValue = value;
+    }
+
+    @Override
+    boolean commit() {
+        int oldValue = committedValue;
+        int newValue = value;
+        return oldValue != newValue;
+    }
+
+    @Override
+    void restoreCommittedValue() {
+        value = committedValue;
+    }
+
+    @Override
+    void restoreValue(Integer value) {
+        this.value = value;
+    }
+}
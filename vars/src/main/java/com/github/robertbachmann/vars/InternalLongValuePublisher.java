@@ -0,0 +1,79 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Internal implementation class
+ */
+final class InternalLongValuePublisher extends InternalPublisher.InternalSourcePublisher<Long> implements LongSupplier {
+    private volatile long value;
+    private volatile Long boxed;
+    private long committedValue;
+
+    InternalLongValuePublisher(long value) {
+        this.value = value;
+    }
+
+    void setValue(long newValue) {
+        Executor executor = getExecutor();
+        if (executor != null) {
+            setValueLater(newValue, executor);
+        } else {
+            write(newValue);
+        }
+    }
+
+    @Override
+    void setValueNow(Long newValue) {
+        write(newValue);
+    }
+
+    private void write(long newValue) {
+        InternalPropagation propagation = InternalPropagation.enter();
+        try {
+            beforeWrite(propagation);
+            value = newValue;
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    @Override
+    public long getAsLong() {
+        return value;
+    }
+
+    @Override
+    Long getValue() {
+        long current = value;
+        Long result = boxed;
+        if (result == null || result != current) {
+            result = current;
+            boxed = result;
+        }
+        return result;
+    }
+
+    @Override
+    void saveCommittedValue() {
+        committedValue = value;
+    }
+
+    @Override
+    boolean commit() {
+        long oldValue = committedValue;
+        long newValue = value;
+        return oldValue != newValue;
+    }
+
+    @Override
+    void restoreCommittedValue() {
+        value = committedValue;
+    }
+
+    @Override
+    void restoreValue(Long value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.robertbachmann.vars;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Internal implementation class
+ * <p>
+ * A bounded cache from the values of the upstream publishers to the result of a derived publisher, evicting the
+ * least recently used entry. Every lookup reorders the entries, so they are guarded by their map: concurrent waves
+ * may re-calculate the publisher at the same time. The supplier is called without the lock, so a slow result
+ * does not block the lookups of other threads.
+ */
+final class InternalMemo<T> {
+    private final LinkedHashMap<List<Object>, T> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    InternalMemo(int maxEntries) {
+        this.entries = new LinkedHashMap<List<Object>, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, T> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for {@code key}, or calculates and caches it.
+     */
+    T get(Object[] key, Supplier<T> supplier) {
+        List<Object> k = Arrays.asList(key);
+        T result;
+        synchronized (entries) {
+            result = entries.get(k);
+        }
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        result = supplier.get();
+        if (result != null) {
+            synchronized (entries) {
+                entries.put(k, result);
+            }
+        }
+        return result;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Applies an action to the non-null elements of an array range on a {@link ForkJoinPool}, splitting the range
+ * into about four chunks per worker.
+ */
+final class InternalParallelForEach<E> extends RecursiveAction {
+    private final E[] elements;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+    private final Consumer<? super E> action;
+
+    private InternalParallelForEach(E[] elements, int from, int to, int chunkSize, Consumer<? super E> action) {
+        this.elements = elements;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+        this.action = action;
+    }
+
+    /**
+     * Returns after {@code action} has been applied to all non-null elements in {@code [from, to)}.
+     */
+    static <E> void forEach(ForkJoinPool pool, E[] elements, int from, int to, Consumer<? super E> action) {
+        int chunkSize = Math.max(1, (to - from) / (pool.getParallelism() * 4));
+        pool.invoke(new InternalParallelForEach<>(elements, from, to, chunkSize, action));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > chunkSize) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new InternalParallelForEach<>(elements, from, middle, chunkSize, action),
+                    new InternalParallelForEach<>(elements, middle, to, chunkSize, action));
+            return;
+        }
+        for (int i = from; i < to; ++i) {
+            E element = elements[i];
+            if (element != null) {
+                action.accept(element);
+            }
+        }
+    }
+}
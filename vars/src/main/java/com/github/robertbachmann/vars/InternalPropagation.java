@@ -0,0 +1,442 @@
+package com.github.robertbachmann.vars;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Internal implementation class
+ * <p>
+ * A propagation wave. Derived publishers that are scheduled while a wave is active are re-calculated in
+ * ascending rank order when the outermost scope exits, so every publisher is re-calculated at most once per
+ * wave and only after all of its upstream publishers have settled.
+ * <p>
+ * Writes to source publishers are recorded in the wave as well and published when the outermost scope exits,
+ * so that several writes in one {@link Var#transaction(Runnable) transaction} cause a single wave. A nested
+ * transaction starts a {@link Savepoint}: the writes after it are at the end of the write log, and the values of
+ * publishers that were written before it and are written again are kept in an undo log, so that the nested
+ * transaction can be rolled back on its own.
+ * <p>
+ * A wave adopts the parallelism of the first published source publisher that has one. When at least
+ * {@code threshold} eager publishers of one rank are due, they are evaluated on the pool, and the wave continues
+ * with the next rank once all of them are evaluated.
+ * <p>
+ * A wave reports the number of re-calculated publishers and its duration to the metrics of the first
+ * instrumented publisher it publishes or re-calculates, timed from that publisher on.
+ * <p>
+ * The first published source publisher with a {@link VarTracer} decides whether the wave is traced. A traced wave
+ * records its writes and re-calculations as spans of an {@link InternalTrace}.
+ */
+final class InternalPropagation {
+    private static final ThreadLocal<InternalPropagation> CURRENT = ThreadLocal.withInitial(InternalPropagation::new);
+    private static volatile boolean readTracking;
+
+    private final InternalPropagation outer;
+    private final ArrayList<InternalPublisher.InternalSourcePublisher<?>> writes = new ArrayList<>();
+    private int published;
+    private final ArrayList<Object> undo = new ArrayList<>();
+    private int savepoint;
+    private int savepoints;
+    private ArrayDeque<InternalDerivedValuePublisher<?>>[] buckets = newBuckets(16);
+    private int depth;
+    private int scheduled;
+    private int cursor = Integer.MAX_VALUE;
+    private InternalPublisher.Parallelism parallelism;
+    private InternalDerivedValuePublisher<?>[] batch;
+    private VarMetrics metrics;
+    private long root;
+    private long started;
+    private int reCalculated;
+    private VarTracer tracer;
+    private InternalTrace trace;
+    InternalComputedPublisher<?> reader;
+
+    private InternalPropagation() {
+        this(null);
+    }
+
+    private InternalPropagation(InternalPropagation outer) {
+        this.outer = outer;
+    }
+
+    /**
+     * Enters the wave of the current thread, starting a new one if none is active.
+     */
+    static InternalPropagation enter() {
+        InternalPropagation propagation = CURRENT.get();
+        propagation.depth++;
+        return propagation;
+    }
+
+    /**
+     * Enters a new wave that is drained independently of any wave that is currently active. Used when the caller
+     * needs a settled value before it returns (construction, pulling a lazy value).
+     */
+    static InternalPropagation enterIsolated() {
+        InternalPropagation current = CURRENT.get();
+        if (current.depth == 0) {
+            current.depth = 1;
+            return current;
+        }
+        InternalPropagation propagation = new InternalPropagation(current);
+        propagation.depth = 1;
+        CURRENT.set(propagation);
+        return propagation;
+    }
+
+    /**
+     * Schedules {@code publisher} in the active wave, or runs a new wave for it if none is active.
+     */
+    static void schedule(InternalDerivedValuePublisher<?> publisher) {
+        InternalPropagation propagation = enter();
+        try {
+            propagation.add(publisher);
+        } finally {
+            propagation.exit();
+        }
+    }
+
+    /**
+     * Called once the first {@link InternalComputedPublisher} exists, until then reads are not looked up.
+     */
+    static void enableReadTracking() {
+        readTracking = true;
+    }
+
+    /**
+     * Records a read of {@code publisher} by the computed publisher that is evaluating in the current wave.
+     */
+    static void recordRead(InternalPublisher<?> publisher) {
+        if (!readTracking) {
+            return;
+        }
+        InternalComputedPublisher<?> reader = CURRENT.get().reader;
+        if (reader != null) {
+            reader.recordRead(publisher);
+        }
+    }
+
+    /**
+     * @return the trace of the wave of the current thread, or null if it is not traced. Only called for
+     * {@link InternalPublisher#isTraced() traced} publishers.
+     */
+    static InternalTrace currentTrace() {
+        return CURRENT.get().trace;
+    }
+
+    boolean isOutermost() {
+        return depth == 1;
+    }
+
+    void exit() {
+        if (depth > 1) {
+            depth--;
+            return;
+        }
+
+        try {
+            drain();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Discards all writes and scheduled publishers of the wave. Only valid in the outermost scope.
+     */
+    void rollback() {
+        for (int i = published; i < writes.size(); ++i) {
+            writes.get(i).rollback();
+        }
+        close();
+    }
+
+    private void close() {
+        clear();
+        depth = 0;
+        if (outer != null) {
+            CURRENT.set(outer);
+        }
+    }
+
+    void addWrite(InternalPublisher.InternalSourcePublisher<?> publisher) {
+        writes.add(publisher);
+    }
+
+    /**
+     * @return the id of the innermost savepoint, or 0 if no nested transaction is active
+     */
+    int getSavepoint() {
+        return savepoint;
+    }
+
+    /**
+     * Records the value of {@code publisher} before its first write since the innermost savepoint. Only called for
+     * publishers that were written before the savepoint.
+     */
+    <T> void addUndo(InternalPublisher.InternalSourcePublisher<T> publisher, T value) {
+        undo.add(publisher);
+        undo.add(value);
+    }
+
+    /**
+     * Starts a nested transaction in the current scope.
+     */
+    Savepoint savepoint() {
+        Savepoint result = new Savepoint(writes.size(), undo.size(), savepoint);
+        savepoint = ++savepoints;
+        return result;
+    }
+
+    /**
+     * Ends the nested transaction of {@code savepoint}, keeping its writes in the wave.
+     */
+    void release(Savepoint savepoint) {
+        this.savepoint = savepoint.outer;
+        exit();
+    }
+
+    /**
+     * Discards the writes since {@code savepoint} and ends its nested transaction.
+     */
+    @SuppressWarnings("unchecked")
+    void rollbackTo(Savepoint savepoint) {
+        for (int i = undo.size() - 2; i >= savepoint.undo; i -= 2) {
+            ((InternalPublisher.InternalSourcePublisher<Object>) undo.get(i)).restoreValue(undo.get(i + 1));
+        }
+        undo.subList(savepoint.undo, undo.size()).clear();
+        for (int i = Math.max(savepoint.writes, published); i < writes.size(); ++i) {
+            writes.get(i).rollback();
+        }
+        writes.subList(Math.max(savepoint.writes, published), writes.size()).clear();
+        this.savepoint = savepoint.outer;
+        exit();
+    }
+
+    void add(InternalDerivedValuePublisher<?> publisher) {
+        if (publisher.scheduledIn == this) {
+            return;
+        }
+        publisher.scheduledIn = this;
+
+        int rank = publisher.getRank();
+        if (rank >= buckets.length) {
+            growBuckets(rank);
+        }
+        ArrayDeque<InternalDerivedValuePublisher<?>> bucket = buckets[rank];
+        if (bucket == null) {
+            bucket = buckets[rank] = new ArrayDeque<>();
+        }
+        bucket.addLast(publisher);
+        scheduled++;
+        if (trace != null) {
+            trace.scheduled(publisher);
+        }
+        if (rank < cursor) {
+            cursor = rank;
+        }
+    }
+
+    private void drain() {
+        for (; ; ) {
+            if (published < writes.size()) {
+                InternalPublisher.InternalSourcePublisher<?> write = writes.get(published++);
+                if (parallelism == null) {
+                    parallelism = write.getEvaluation();
+                }
+                if (metrics == null) {
+                    adoptMetrics(write);
+                }
+                if (tracer == null && (tracer = write.getTracer()) != null) {
+                    trace = tracer.sample();
+                }
+                if (trace == null) {
+                    write.publish();
+                } else {
+                    publishTraced(write);
+                }
+                continue;
+            }
+            if (scheduled == 0) {
+                if (metrics != null && reCalculated > 0) {
+                    metrics.waveCompleted(root, reCalculated, System.nanoTime() - started);
+                }
+                if (trace != null) {
+                    trace.finish();
+                }
+                break;
+            }
+            ArrayDeque<InternalDerivedValuePublisher<?>> bucket = buckets[cursor];
+            if (parallelism != null && bucket != null && bucket.size() >= parallelism.threshold) {
+                reCalculateInParallel(bucket);
+                continue;
+            }
+            InternalDerivedValuePublisher<?> publisher = bucket != null ? bucket.pollFirst() : null;
+            if (publisher == null) {
+                cursor++;
+                continue;
+            }
+            scheduled--;
+            reCalculated++;
+            publisher.scheduledIn = null;
+            if (metrics == null) {
+                adoptMetrics(publisher);
+            }
+            if (trace == null) {
+                publisher.reCalculate();
+            } else {
+                reCalculateTraced(publisher);
+            }
+        }
+    }
+
+    private void publishTraced(InternalPublisher.InternalSourcePublisher<?> write) {
+        long start = System.nanoTime();
+        long span = trace.open();
+        boolean changed = write.publish();
+        trace.close(span, 0L, VarTracer.Span.Kind.WRITE, write.getId(), start,
+                changed ? VarTracer.Span.Outcome.CHANGED : VarTracer.Span.Outcome.UNCHANGED);
+    }
+
+    private void reCalculateTraced(InternalDerivedValuePublisher<?> publisher) {
+        long parent = trace.causeOf(publisher);
+        long start = System.nanoTime();
+        long span = trace.open();
+        VarTracer.Span.Outcome outcome = VarTracer.Span.Outcome.SKIPPED;
+        if (publisher.beginReCalculate()) {
+            publisher.evaluateQuietly();
+            outcome = publisher.getOutcome();
+            publisher.endReCalculate();
+        }
+        trace.close(span, parent, VarTracer.Span.Kind.RECALCULATE, publisher.getId(), start, outcome);
+    }
+
+    private void adoptMetrics(InternalPublisher<?> publisher) {
+        metrics = publisher.getMetrics();
+        if (metrics != null) {
+            root = publisher.getId();
+            started = System.nanoTime();
+        }
+    }
+
+    /**
+     * Re-calculates the publishers of one rank, evaluating the eager ones on the pool of the wave. The publishers
+     * of one rank do not depend on each other, and only {@link InternalDerivedValuePublisher#evaluateQuietly()}
+     * runs on the pool.
+     */
+    private void reCalculateInParallel(ArrayDeque<InternalDerivedValuePublisher<?>> bucket) {
+        if (batch == null || batch.length < bucket.size()) {
+            batch = new InternalDerivedValuePublisher<?>[Math.max(bucket.size(), 16)];
+        }
+        int n = 0;
+        InternalDerivedValuePublisher<?> publisher;
+        while ((publisher = bucket.pollFirst()) != null) {
+            scheduled--;
+            reCalculated++;
+            publisher.scheduledIn = null;
+            if (metrics == null) {
+                adoptMetrics(publisher);
+            }
+            if (trace != null && publisher.isLazy()) {
+                reCalculateTraced(publisher);
+                continue;
+            }
+            if (!publisher.beginReCalculate()) {
+                if (trace != null) {
+                    long span = trace.open();
+                    trace.close(span, trace.causeOf(publisher), VarTracer.Span.Kind.RECALCULATE, publisher.getId(),
+                            System.nanoTime(), VarTracer.Span.Outcome.SKIPPED);
+                }
+                continue;
+            }
+            if (publisher.isLazy()) {
+                publisher.evaluateQuietly();
+                publisher.endReCalculate();
+            } else {
+                batch[n++] = publisher;
+            }
+        }
+
+        try {
+            long start = System.nanoTime();
+            if (n >= parallelism.threshold) {
+                InternalParallelForEach.forEach(parallelism.pool, batch, 0, n,
+                        InternalDerivedValuePublisher::evaluateQuietly);
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    batch[i].evaluateQuietly();
+                }
+            }
+            for (int i = 0; i < n; ++i) {
+                if (trace == null) {
+                    batch[i].endReCalculate();
+                } else {
+                    // the span of a publisher of the batch starts with the batch
+                    long parent = trace.causeOf(batch[i]);
+                    long span = trace.open();
+                    VarTracer.Span.Outcome outcome = batch[i].getOutcome();
+                    batch[i].endReCalculate();
+                    trace.close(span, parent, VarTracer.Span.Kind.RECALCULATE, batch[i].getId(), start, outcome);
+                }
+            }
+        } finally {
+            Arrays.fill(batch, 0, n, null);
+        }
+    }
+
+    private void clear() {
+        for (int i = published; i < writes.size(); ++i) {
+            writes.get(i).writtenIn = null;
+        }
+        writes.clear();
+        published = 0;
+        undo.clear();
+        savepoint = 0;
+        savepoints = 0;
+
+        if (scheduled > 0) {
+            for (ArrayDeque<InternalDerivedValuePublisher<?>> bucket : buckets) {
+                if (bucket == null) {
+                    continue;
+                }
+                for (InternalDerivedValuePublisher<?> publisher : bucket) {
+                    publisher.scheduledIn = null;
+                }
+                bucket.clear();
+            }
+            scheduled = 0;
+        }
+        cursor = Integer.MAX_VALUE;
+        parallelism = null;
+        metrics = null;
+        reCalculated = 0;
+        tracer = null;
+        trace = null;
+    }
+
+    private void growBuckets(int rank) {
+        ArrayDeque<InternalDerivedValuePublisher<?>>[] newBuckets = newBuckets(Math.max(rank + 1, buckets.length * 2));
+        System.arraycopy(buckets, 0, newBuckets, 0, buckets.length);
+        buckets = newBuckets;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<InternalDerivedValuePublisher<?>>[] newBuckets(int size) {
+        return (ArrayDeque<InternalDerivedValuePublisher<?>>[]) new ArrayDeque[size];
+    }
+
+    /**
+     * The sizes of the write and undo logs at the start of a nested transaction, and the savepoint it is nested in.
+     */
+    static final class Savepoint {
+        final int writes;
+        final int undo;
+        final int outer;
+
+        Savepoint(int writes, int undo, int outer) {
+            this.writes = writes;
+            this.undo = undo;
+            this.outer = outer;
+        }
+    }
+}
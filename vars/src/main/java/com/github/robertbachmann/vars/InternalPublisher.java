@@ -3,37 +3,70 @@ package com.github.robertbachmann.vars;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
 
 /**
  * Internal implementation class
  */
 abstract class InternalPublisher<T> implements Publisher<T> {
-    private final List<InternalDownStreamSubscription<T>> downStreamSubscriptions = new CopyOnWriteArrayList<>();
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<InternalPublisher, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(InternalPublisher.class, Object.class, "volatileValue");
+
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final ReferenceQueue<InternalPublisher<?>> COLLECTED = new ReferenceQueue<>();
+    private static final Set<Instrumented> INSTRUMENTED = ConcurrentHashMap.newKeySet();
+
+    private final long id = IDS.incrementAndGet();
+    private final InternalDownStreamSubscriptions<T> downStreamSubscriptions = new InternalDownStreamSubscriptions<>();
     private final boolean isLazy = false;
     private volatile T volatileValue;
     private volatile Throwable volatileThrowable;
+    private volatile Parallelism fanOut;
+    private volatile VarMetrics metrics;
+    private volatile boolean traced;
 
     @Override
     public final void subscribe(Subscriber<? super T> subscriber) {
         InternalDownStreamSubscription<T> subscription =
                 new InternalDownStreamSubscription<>(this, subscriber, this.volatileThrowable);
         downStreamSubscriptions.add(subscription);
+        subscriptionsChanged();
+        reportSubscribers();
+        if (subscription.isExternal()) {
+            // a suspended publisher is brought up to date before the subscription is done, so its value is
+            // offered once
+            addObserver();
+        }
         subscriber.onSubscribe(subscription);
         subscription.subscribeDone();
 
-        T currentValue = this.volatileValue;
         Throwable currentThrowable = this.volatileThrowable;
 
         if (currentThrowable != null) {
             subscription.offerError(currentThrowable);
-        } else if (currentValue != null) {
-            subscription.offerValue(currentValue);
+        } else if (getValue() != null) {
+            subscription.offerValue();
         }
     }
 
-    final T getValue() {
+    /**
+     * Primitive publishers override this method to box their value on demand.
+     */
+    T getValue() {
         return this.volatileValue;
     }
 
@@ -45,6 +78,13 @@ abstract class InternalPublisher<T> implements Publisher<T> {
         this.volatileValue = newValue;
     }
 
+    /**
+     * Sets the value to {@code newValue} if it is the same instance as {@code expectedValue}.
+     */
+    final boolean compareAndSetValue(T expectedValue, T newValue) {
+        return VALUE.compareAndSet(this, expectedValue, newValue);
+    }
+
     final void updateThrowable(Throwable throwable) {
         this.volatileThrowable = throwable;
     }
@@ -57,51 +97,522 @@ abstract class InternalPublisher<T> implements Publisher<T> {
 
     final void cancelSubscription(InternalDownStreamSubscription<T> subscription) {
         downStreamSubscriptions.remove(subscription);
+        subscriptionsChanged();
+        reportSubscribers();
+        if (subscription.isExternal()) {
+            removeObserver();
+        }
+    }
+
+    private void reportSubscribers() {
+        VarMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.subscribersChanged(id, downStreamSubscriptions.size());
+        }
+    }
+
+    /**
+     * Called after a subscription was added or removed.
+     */
+    void subscriptionsChanged() {
+    }
+
+    /**
+     * Called when a subscriber or an eager derived publisher starts to observe this publisher.
+     */
+    void addObserver() {
+    }
+
+    /**
+     * Called when an observer cancelled or was suspended.
+     */
+    void removeObserver() {
+    }
+
+    final long getId() {
+        return id;
     }
 
-    final List<InternalDownStreamSubscription<T>> getDownStreamSubscriptions() {
+    /**
+     * @return true if this publisher is a traced source publisher or downstream of one, only then its deliveries
+     * look up the trace of the current wave
+     */
+    final boolean isTraced() {
+        return traced;
+    }
+
+    /**
+     * Marks this publisher and its downstream publishers as traced.
+     */
+    final void markTraced() {
+        ArrayDeque<InternalPublisher<?>> pending = new ArrayDeque<>();
+        pending.push(this);
+        InternalPublisher<?> publisher;
+        while ((publisher = pending.poll()) != null) {
+            if (publisher.traced) {
+                continue;
+            }
+            publisher.traced = true;
+            for (InternalDownStreamSubscription<?> subscription : publisher.getDownStreamSubscriptions()) {
+                InternalDerivedValuePublisher<?> downstream = subscription.getDownstreamPublisher();
+                if (downstream != null) {
+                    pending.push(downstream);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the metrics this publisher reports to, or null if it is not instrumented
+     */
+    final VarMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publishers that report to metrics are tracked weakly, so that the metrics learn when they are collected.
+     */
+    final void setMetrics(VarMetrics metrics) {
+        if (metrics != null && metrics != this.metrics) {
+            INSTRUMENTED.add(new Instrumented(this, metrics));
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reports the instrumented publishers that were garbage collected to their metrics.
+     */
+    static void reportCollected() {
+        Instrumented reference;
+        while ((reference = (Instrumented) COLLECTED.poll()) != null) {
+            INSTRUMENTED.remove(reference);
+            reference.metrics.collected(reference.id);
+        }
+    }
+
+    final InternalDownStreamSubscriptions<T> getDownStreamSubscriptions() {
         return downStreamSubscriptions;
     }
 
+    final void fanOutOn(ForkJoinPool pool, int threshold) {
+        this.fanOut = pool != null ? new Parallelism(pool, threshold) : null;
+    }
+
+    /**
+     * Offers the current value to all subscriptions. With a parallel fan-out and enough subscriptions, derived
+     * publishers are offered the value on the current thread, because they take part in its wave, and the other
+     * subscriptions in parallel.
+     */
+    final void offerValueToAll() {
+        Parallelism fanOut = this.fanOut;
+        int count = downStreamSubscriptions.size();
+        if (fanOut == null || count < fanOut.threshold) {
+            downStreamSubscriptions.forEach(InternalDownStreamSubscription::offerValue);
+            return;
+        }
+
+        downStreamSubscriptions.forEach(InternalPublisher::offerValueIfDerived);
+        downStreamSubscriptions.forEachInParallel(fanOut.pool, InternalPublisher::offerValueUnlessDerived);
+    }
+
+    private static void offerValueIfDerived(InternalDownStreamSubscription<?> subscription) {
+        if (subscription.getDownstreamPublisher() != null) {
+            subscription.offerValue();
+        }
+    }
+
+    private static void offerValueUnlessDerived(InternalDownStreamSubscription<?> subscription) {
+        if (subscription.getDownstreamPublisher() == null) {
+            subscription.offerValue();
+        }
+    }
+
+    /**
+     * @return true if the value of this publisher is pulled by {@link #refresh()} rather than pushed
+     */
     abstract boolean isLazy();
 
+    /**
+     * @return true if this publisher was created lazy, as reported by {@link Var#isLazy()}
+     */
+    boolean isDeclaredLazy() {
+        return isLazy();
+    }
+
+    /**
+     * Brings the value of a lazy publisher up to date, called by {@link Var#get()}.
+     */
+    void refresh() {
+        requestUpstream(1);
+    }
+
+    /**
+     * Adds the upstream publishers that are vars to {@code inputs}, for {@link VarGraph}. May be called while the
+     * graph changes.
+     */
+    void collectUpstream(List<InternalPublisher<?>> inputs) {
+    }
+
+    /**
+     * @return 0 for source publishers, otherwise one more than the highest rank of all upstream publishers
+     */
+    abstract int getRank();
+
     protected abstract void requestUpstream(long n);
 
     protected abstract boolean peekUpstream();
 
-    static final class InternalValuePublisher<T> extends InternalPublisher<T> {
-        InternalValuePublisher(T t) {
-            updateValue(t);
+    /**
+     * Base class for publishers that are written by {@link SimpleVar} and the primitive vars. Writes are recorded
+     * in the current propagation wave and published when the wave exits.
+     * <p>
+     * If an executor is set, a write only stores the new value in {@code pendingValue} and the wave runs on the
+     * executor. Writes that arrive while a wave is scheduled or running replace the pending value, so a slow wave
+     * is followed by a single wave for the latest value.
+     * <p>
+     * Atomic updates ({@link #publishAtomicUpdate()}) store the new value right away and use the same drain to
+     * publish it, on the executor or on the writing thread: whoever increments {@code wip} from zero publishes
+     * the current value until no update is missed, and the other writers return without waiting. So waves of
+     * concurrent writers never overlap, and subscribers see the values in the order of the updates, skipping
+     * values that were replaced before they were published.
+     */
+    abstract static class InternalSourcePublisher<T> extends InternalPublisher<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<InternalSourcePublisher, Object> PENDING_VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(InternalSourcePublisher.class, Object.class, "pendingValue");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<InternalSourcePublisher> WIP =
+                AtomicIntegerFieldUpdater.newUpdater(InternalSourcePublisher.class, "wip");
+
+        InternalPropagation writtenIn;
+        private int savedIn;
+        private volatile Executor executor;
+        private volatile Parallelism evaluation;
+        private volatile Object pendingValue;
+        private volatile int wip;
+        private volatile VarTracer tracer;
+
+        final void propagateOn(Executor executor) {
+            this.executor = executor;
         }
 
-        void setValue(T newValue) {
-            T oldValue = getValue();
-            updateValue(newValue);
+        final void evaluateOn(ForkJoinPool pool, int threshold) {
+            if (threshold < 1) {
+                throw new IllegalArgumentException("threshold < 1");
+            }
+            this.evaluation = pool != null ? new Parallelism(pool, threshold) : null;
+        }
+
+        /**
+         * @return the parallelism of the waves this publisher starts, or null if they evaluate on one thread
+         */
+        final Parallelism getEvaluation() {
+            return evaluation;
+        }
+
+        final void setTracer(VarTracer tracer) {
+            this.tracer = tracer;
+            if (tracer != null) {
+                markTraced();
+            }
+        }
+
+        /**
+         * @return the tracer that samples the waves of this publisher, or null if they are not traced
+         */
+        final VarTracer getTracer() {
+            return tracer;
+        }
+
+        /**
+         * @return the executor that runs the waves of this publisher, or null if they run on the writing thread
+         */
+        final Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Records {@code newValue} and schedules a wave on {@code executor}, unless one is already scheduled.
+         */
+        final void setValueLater(T newValue, Executor executor) {
+            pendingValue = newValue;
+            drain(executor);
+        }
 
-            boolean different = (oldValue != null ? !oldValue.equals(newValue) : newValue != null);
+        /**
+         * Publishes the current value after an atomic update.
+         */
+        final void publishAtomicUpdate() {
+            Executor executor = getExecutor();
+            if (executor != null) {
+                drain(executor);
+            } else if (WIP.getAndIncrement(this) == 0) {
+                drainPendingValue();
+            }
+        }
+
+        /**
+         * If {@code executor} rejects the task, this thread still owns the drain and runs it, so that neither its
+         * value nor the values of concurrent writers that found the drain owned are stranded.
+         */
+        private void drain(Executor executor) {
+            if (WIP.getAndIncrement(this) == 0) {
+                try {
+                    executor.execute(this::drainPendingValue);
+                } catch (RejectedExecutionException e) {
+                    drainPendingValue();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drainPendingValue() {
+            Throwable failure = null;
+            int missed = 1;
+            for (; ; ) {
+                T value = (T) PENDING_VALUE.getAndSet(this, null);
+                try {
+                    if (value != null) {
+                        setValueNow(value);
+                    } else {
+                        publishCurrentValue();
+                    }
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    } else {
+                        failure.addSuppressed(t);
+                    }
+                }
+
+                missed = WIP.addAndGet(this, -missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
 
-            if (!different) {
-                return;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new RuntimeException(failure);
             }
+        }
+
+        /**
+         * Writes {@code newValue} in the wave of the current thread.
+         */
+        abstract void setValueNow(T newValue);
+
+        /**
+         * Publishes the current value in the wave of the current thread, if it differs from the published value.
+         */
+        final void publishCurrentValue() {
+            InternalPropagation propagation = InternalPropagation.enter();
+            try {
+                beforeWrite(propagation);
+            } finally {
+                propagation.exit();
+            }
+        }
+
+        /**
+         * Must be called before the first write within {@code propagation}.
+         */
+        final void beforeWrite(InternalPropagation propagation) {
+            if (writtenIn != propagation) {
+                writtenIn = propagation;
+                savedIn = propagation.getSavepoint();
+                saveCommittedValue();
+                propagation.addWrite(this);
+            } else if (savedIn != propagation.getSavepoint()) {
+                // written before the savepoint of a nested transaction, which may roll back to the current value
+                savedIn = propagation.getSavepoint();
+                if (savedIn != 0) {
+                    propagation.addUndo(this, getValue());
+                }
+            }
+        }
 
-            for (InternalDownStreamSubscription<T> subscription : getDownStreamSubscriptions()) {
-                subscription.offerValue(newValue);
+        /**
+         * Publishes the current value if it differs from the value before the first write of the wave.
+         *
+         * @return true if the value was published
+         */
+        final boolean publish() {
+            InternalDerivedValuePublisher.expungeCollected();
+            writtenIn = null;
+            boolean changed = commit();
+            VarMetrics metrics = getMetrics();
+            if (metrics != null) {
+                metrics.written(getId(), changed);
             }
+            if (changed) {
+                offerValueToAll();
+            }
+            return changed;
+        }
+
+        /**
+         * Restores the value before the first write of the wave.
+         */
+        final void rollback() {
+            writtenIn = null;
+            restoreCommittedValue();
         }
 
+        abstract void saveCommittedValue();
+
+        /**
+         * @return true if the current value differs from the saved value
+         */
+        abstract boolean commit();
+
+        abstract void restoreCommittedValue();
+
+        /**
+         * Restores {@code value}, which was the value at the start of a nested transaction.
+         */
+        abstract void restoreValue(T value);
+
         @Override
-        boolean isLazy() {
+        final boolean isLazy() {
             return false;
         }
 
         @Override
-        protected void requestUpstream(long n) {
+        final int getRank() {
+            return 0;
+        }
+
+        @Override
+        protected final void requestUpstream(long n) {
             // ignore
         }
 
         @Override
-        protected boolean peekUpstream() {
+        protected final boolean peekUpstream() {
             return false;
         }
     }
+
+    /**
+     * Keeps the value that was published last instead of saving the value before each wave, so that a wave
+     * publishes values that were stored by atomic updates before it started.
+     */
+    static final class InternalValuePublisher<T> extends InternalSourcePublisher<T> {
+        private final Equivalence<? super T> equivalence;
+        private T publishedValue;
+
+        InternalValuePublisher(T t, Equivalence<? super T> equivalence) {
+            this.equivalence = equivalence;
+            this.publishedValue = t;
+            updateValue(t);
+        }
+
+        boolean compareAndSet(T expectedValue, T newValue) {
+            if (!compareAndSetValue(expectedValue, newValue)) {
+                return false;
+            }
+            publishAtomicUpdate();
+            return true;
+        }
+
+        T updateAndGet(UnaryOperator<T> function) {
+            T value;
+            T newValue;
+            do {
+                value = getValue();
+                newValue = Objects.requireNonNull(function.apply(value), "newValue");
+            } while (!compareAndSetValue(value, newValue));
+            publishAtomicUpdate();
+            return newValue;
+        }
+
+        void setValue(T newValue) {
+            Executor executor = getExecutor();
+            if (executor != null) {
+                setValueLater(newValue, executor);
+            } else {
+                setValueNow(newValue);
+            }
+        }
+
+        @Override
+        void setValueNow(T newValue) {
+            InternalPropagation propagation = InternalPropagation.enter();
+            try {
+                beforeWrite(propagation);
+                updateValue(newValue);
+            } finally {
+                propagation.exit();
+            }
+        }
+
+        @Override
+        void saveCommittedValue() {
+            // the published value is the saved value
+        }
+
+        /**
+         * A new value that is equivalent to the published value is not propagated. With a tolerance it is discarded
+         * (see {@link InternalTolerance}), unless an atomic update replaced it in the meantime.
+         */
+        @Override
+        boolean commit() {
+            T oldValue = publishedValue;
+            T newValue = getValue();
+            if (oldValue == newValue) {
+                return false;
+            }
+            if (oldValue != null && newValue != null && equivalence.equivalent(oldValue, newValue)) {
+                if (InternalTolerance.keepsCurrentValue(equivalence)) {
+                    compareAndSetValue(newValue, oldValue);
+                } else {
+                    publishedValue = newValue;
+                }
+                return false;
+            }
+            publishedValue = newValue;
+            return true;
+        }
+
+        @Override
+        void restoreCommittedValue() {
+            updateValue(publishedValue);
+        }
+
+        @Override
+        void restoreValue(T value) {
+            updateValue(value);
+        }
+    }
+
+    /**
+     * The id and the metrics of an instrumented publisher, which outlive it.
+     */
+    private static final class Instrumented extends WeakReference<InternalPublisher<?>> {
+        final long id;
+        final VarMetrics metrics;
+
+        Instrumented(InternalPublisher<?> publisher, VarMetrics metrics) {
+            super(publisher, COLLECTED);
+            this.id = publisher.id;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * A pool and the minimum number of elements (subscriptions, publishers) to process on it.
+     */
+    static final class Parallelism {
+        final ForkJoinPool pool;
+        final int threshold;
+
+        Parallelism(ForkJoinPool pool, int threshold) {
+            this.pool = pool;
+            this.threshold = threshold;
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.github.robertbachmann.vars;
+
+/**
+ * Internal implementation class
+ * <p>
+ * Numbers are equivalent if they differ by at most {@code absolute}, or by at most {@code relative} times the
+ * larger magnitude. Unlike other equivalences, a var with a tolerance keeps its current value when an equivalent
+ * value is set, so that a series of changes below the tolerance cannot drift away unnoticed.
+ */
+final class InternalTolerance implements Equivalence<Number> {
+    private final double absolute;
+    private final double relative;
+
+    InternalTolerance(double absolute, double relative) {
+        this.absolute = absolute;
+        this.relative = relative;
+    }
+
+    @Override
+    public boolean equivalent(Number a, Number b) {
+        double x = a.doubleValue();
+        double y = b.doubleValue();
+        return Math.abs(x - y) <= Math.max(absolute, relative * Math.max(Math.abs(x), Math.abs(y)));
+    }
+
+    /**
+     * @return true if a var with {@code equivalence} keeps its current value instead of an equivalent new one
+     */
+    static boolean keepsCurrentValue(Equivalence<?> equivalence) {
+        return equivalence instanceof InternalTolerance;
+    }
+}
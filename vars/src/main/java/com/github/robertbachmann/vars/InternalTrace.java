@@ -0,0 +1,74 @@
+package com.github.robertbachmann.vars;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * Internal implementation class
+ * <p>
+ * The trace of a sampled propagation wave, only touched by the thread that propagates it. Writes and
+ * re-calculations are the open span while they run, so the publishers they schedule and the values they deliver
+ * become their children. Spans are numbered in the order in which they start.
+ */
+final class InternalTrace {
+    private final VarTracer tracer;
+    private final long id;
+    private final Thread thread = Thread.currentThread();
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final ArrayList<VarTracer.Span> spans = new ArrayList<>();
+    private final IdentityHashMap<InternalDerivedValuePublisher<?>, Long> causes = new IdentityHashMap<>();
+    private long lastSpan;
+    private long openSpan;
+
+    InternalTrace(VarTracer tracer, long id) {
+        this.tracer = tracer;
+        this.id = id;
+    }
+
+    /**
+     * Records that the open span scheduled {@code publisher}.
+     */
+    void scheduled(InternalDerivedValuePublisher<?> publisher) {
+        causes.put(publisher, openSpan);
+    }
+
+    /**
+     * @return the span that scheduled {@code publisher}, or 0 if it was scheduled outside of a span
+     */
+    long causeOf(InternalDerivedValuePublisher<?> publisher) {
+        Long cause = causes.remove(publisher);
+        return cause != null ? cause : 0L;
+    }
+
+    /**
+     * Opens a write or re-calculation span.
+     *
+     * @return the id of the span
+     */
+    long open() {
+        return openSpan = ++lastSpan;
+    }
+
+    /**
+     * Closes the span returned by {@link #open()}, which started at {@code start} ({@link System#nanoTime()}).
+     */
+    void close(long span, long parent, VarTracer.Span.Kind kind, long var, long start, VarTracer.Span.Outcome outcome) {
+        spans.add(new VarTracer.Span(span, parent, kind, var, start - startNanos, System.nanoTime() - start, outcome));
+        openSpan = 0;
+    }
+
+    /**
+     * Records the delivery of a value of {@code var} to a subscriber, which started at {@code start}.
+     */
+    void delivered(long var, long start, VarTracer.Span.Outcome outcome) {
+        spans.add(new VarTracer.Span(++lastSpan, openSpan, VarTracer.Span.Kind.DELIVER, var, start - startNanos,
+                System.nanoTime() - start, outcome));
+    }
+
+    void finish() {
+        spans.sort(Comparator.comparingLong(VarTracer.Span::getId));
+        tracer.record(new VarTracer.Trace(id, thread, startEpochMillis, spans));
+    }
+}
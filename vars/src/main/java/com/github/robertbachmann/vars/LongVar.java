@@ -0,0 +1,54 @@
+package com.github.robertbachmann.vars;
+
+import org.reactivestreams.Publisher;
+
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reactive variable holder for an unboxed {@code long}. Values are boxed only when they are read through
+ * the {@link Var} API or delivered to a subscriber.
+ */
+public class LongVar extends Var<Long> implements LongSupplier {
+    public static SimpleLongVar valueOf(long val) {
+        return new SimpleLongVar(val);
+    }
+
+    public static <A> LongVar mapToLong(Var<A> var1, ToLongFunction<? super A> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsLong(var1.getLastValue()), var1);
+    }
+
+    public final LongVar map(LongUnaryOperator function) {
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsLong(getAsLong()), this);
+    }
+
+    public final LongVar combine(LongVar var2, LongBinaryOperator function) {
+        requireNonNull(var2, "var2");
+        requireNonNull(function, "function");
+        return create(() -> function.applyAsLong(getAsLong(), var2.getAsLong()), this, var2);
+    }
+
+    private static LongVar create(LongSupplier supplier, Publisher<?>... vars) {
+        return new LongVar(new InternalDerivedLongPublisher(supplier, vars).connect());
+    }
+
+    @Override
+    public final long getAsLong() {
+        InternalPropagation.recordRead(impl);
+        if (impl.isLazy()) {
+            impl.refresh();
+        }
+        return ((LongSupplier) impl).getAsLong();
+    }
+
+    LongVar(InternalPublisher<Long> publisher) {
+        super(publisher);
+    }
+}
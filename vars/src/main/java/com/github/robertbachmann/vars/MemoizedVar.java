@@ -0,0 +1,29 @@
+package com.github.robertbachmann.vars;
+
+/**
+ * A Var whose results are cached by the values of its inputs, see {@link Var#memoized(int)}.
+ *
+ * @param <T>
+ */
+public final class MemoizedVar<T> extends Var<T> {
+    private final InternalMemo<T> memo;
+
+    MemoizedVar(InternalPublisher<T> publisher, InternalMemo<T> memo) {
+        super(publisher);
+        this.memo = memo;
+    }
+
+    /**
+     * @return the number of evaluations that were answered from the cache
+     */
+    public long getHitCount() {
+        return memo.getHits();
+    }
+
+    /**
+     * @return the number of evaluations that called the function
+     */
+    public long getMissCount() {
+        return memo.getMisses();
+    }
+}
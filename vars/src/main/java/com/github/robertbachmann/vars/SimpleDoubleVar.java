@@ -0,0 +1,68 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A DoubleVar that can be set.
+ */
+public final class SimpleDoubleVar extends DoubleVar {
+    SimpleDoubleVar(double value) {
+        super(new InternalDoubleValuePublisher(value));
+    }
+
+    public void setValue(double newValue) {
+        ((InternalDoubleValuePublisher) impl).setValue(newValue);
+    }
+
+    /**
+     * Propagates changes of this var on {@code executor}, see {@link SimpleVar#propagateOn(Executor)}.
+     *
+     * @param executor the executor, or {@code null} to propagate on the writing thread (the default)
+     * @return this var
+     */
+    public SimpleDoubleVar propagateOn(Executor executor) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).propagateOn(executor);
+        return this;
+    }
+
+    /**
+     * Evaluates the vars that depend on this var on {@code pool}, see {@link SimpleVar#evaluateOn(ForkJoinPool, int)}.
+     *
+     * @param pool      the pool, or {@code null} to evaluate on the propagating thread (the default)
+     * @param threshold the minimum number of vars of one depth to evaluate in parallel
+     * @return this var
+     */
+    public SimpleDoubleVar evaluateOn(ForkJoinPool pool, int threshold) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).evaluateOn(pool, threshold);
+        return this;
+    }
+
+    @Override
+    public SimpleDoubleVar fanOutOn(ForkJoinPool pool, int threshold) {
+        super.fanOutOn(pool, threshold);
+        return this;
+    }
+
+    /**
+     * Reports to {@code metrics}, see {@link SimpleVar#instrument(VarMetrics)}.
+     *
+     * @param metrics the metrics, or {@code null} to disable them (the default)
+     * @return this var
+     */
+    public SimpleDoubleVar instrument(VarMetrics metrics) {
+        impl.setMetrics(metrics);
+        return this;
+    }
+
+    /**
+     * Traces waves with {@code tracer}, see {@link SimpleVar#trace(VarTracer)}.
+     *
+     * @param tracer the tracer, or {@code null} to disable tracing (the default)
+     * @return this var
+     */
+    public SimpleDoubleVar trace(VarTracer tracer) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).setTracer(tracer);
+        return this;
+    }
+}
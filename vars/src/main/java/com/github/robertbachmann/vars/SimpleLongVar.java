@@ -0,0 +1,68 @@
+package com.github.robertbachmann.vars;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A LongVar that can be set.
+ */
+public final class SimpleLongVar extends LongVar {
+    SimpleLongVar(long value) {
+        super(new InternalLongValuePublisher(value));
+    }
+
+    public void setValue(long newValue) {
+        ((InternalLongValuePublisher) impl).setValue(newValue);
+    }
+
+    /**
+     * Propagates changes of this var on {@code executor}, see {@link SimpleVar#propagateOn(Executor)}.
+     *
+     * @param executor the executor, or {@code null} to propagate on the writing thread (the default)
+     * @return this var
+     */
+    public SimpleLongVar propagateOn(Executor executor) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).propagateOn(executor);
+        return this;
+    }
+
+    /**
+     * Evaluates the vars that depend on this var on {@code pool}, see {@link SimpleVar#evaluateOn(ForkJoinPool, int)}.
+     *
+     * @param pool      the pool, or {@code null} to evaluate on the propagating thread (the default)
+     * @param threshold the minimum number of vars of one depth to evaluate in parallel
+     * @return this var
+     */
+    public SimpleLongVar evaluateOn(ForkJoinPool pool, int threshold) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).evaluateOn(pool, threshold);
+        return this;
+    }
+
+    @Override
+    public SimpleLongVar fanOutOn(ForkJoinPool pool, int threshold) {
+        super.fanOutOn(pool, threshold);
+        return this;
+    }
+
+    /**
+     * Reports to {@code metrics}, see {@link SimpleVar#instrument(VarMetrics)}.
+     *
+     * @param metrics the metrics, or {@code null} to disable them (the default)
+     * @return this var
+     */
+    public SimpleLongVar instrument(VarMetrics metrics) {
+        impl.setMetrics(metrics);
+        return this;
+    }
+
+    /**
+     * Traces waves with {@code tracer}, see {@link SimpleVar#trace(VarTracer)}.
+     *
+     * @param tracer the tracer, or {@code null} to disable tracing (the default)
+     * @return this var
+     */
+    public SimpleLongVar trace(VarTracer tracer) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).setTracer(tracer);
+        return this;
+    }
+}
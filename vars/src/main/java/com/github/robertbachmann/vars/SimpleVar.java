@@ -1,6 +1,10 @@
 package com.github.robertbachmann.vars;
 
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
 
 /**
  * A Var that can be set.
@@ -8,12 +12,115 @@ import java.util.Objects;
  * @param <T>
  */
 public final class SimpleVar<T> extends Var<T> {
-    SimpleVar(T value) {
-        super(new InternalPublisher.InternalValuePublisher<>(Objects.requireNonNull(value, "value")));
+    SimpleVar(T value, Equivalence<? super T> equivalence) {
+        super(new InternalPublisher.InternalValuePublisher<>(Objects.requireNonNull(value, "value"),
+                Objects.requireNonNull(equivalence, "equivalence")));
     }
 
     public void setValue(T newValue) {
         Objects.requireNonNull(newValue, "newValue");
         ((InternalPublisher.InternalValuePublisher<T>) impl).setValue(newValue);
     }
+
+    /**
+     * Atomically sets the value to {@code newValue} if the current value is {@code expectedValue}, compared with
+     * {@code ==} like {@link java.util.concurrent.atomic.AtomicReference#compareAndSet}.
+     * <p>
+     * Unlike {@link #setValue}, the atomic methods are safe for concurrent writers and do not block: the new value
+     * is visible to {@link #get()} at once, and the changes of all writers are propagated one after another, by
+     * whichever writer finds no propagation in progress (or on the executor set by {@link #propagateOn}).
+     * Subscribers receive the values in the order of the updates, values that are replaced before they are
+     * propagated are skipped.
+     *
+     * @return true if the value was set
+     */
+    public boolean compareAndSet(T expectedValue, T newValue) {
+        Objects.requireNonNull(newValue, "newValue");
+        return ((InternalPublisher.InternalValuePublisher<T>) impl).compareAndSet(expectedValue, newValue);
+    }
+
+    /**
+     * Atomically replaces the value by the result of {@code function}, see {@link #compareAndSet}. The function
+     * may be called more than once when writers contend, so it must not have side effects.
+     *
+     * @return the new value
+     */
+    public T updateAndGet(UnaryOperator<T> function) {
+        Objects.requireNonNull(function, "function");
+        return ((InternalPublisher.InternalValuePublisher<T>) impl).updateAndGet(function);
+    }
+
+    /**
+     * Atomically replaces the value by the result of {@code function} applied to the current value and {@code x},
+     * see {@link #updateAndGet}.
+     *
+     * @return the new value
+     */
+    public T accumulateAndGet(T x, BinaryOperator<T> function) {
+        Objects.requireNonNull(x, "x");
+        Objects.requireNonNull(function, "function");
+        return ((InternalPublisher.InternalValuePublisher<T>) impl).updateAndGet(value -> function.apply(value, x));
+    }
+
+    /**
+     * Propagates changes of this var on {@code executor}: {@link #setValue} records the new value and returns, and
+     * the dependent vars and subscribers are updated by a task on {@code executor}. Until then {@link #get()}
+     * returns the previous value. Values that are set while a task is pending or running are conflated, only the
+     * latest one is propagated. If {@code executor} rejects the task, the changes are propagated on the writing
+     * thread. Writes to this var are not part of an enclosing {@link Var#transaction}.
+     *
+     * @param executor the executor, or {@code null} to propagate on the writing thread (the default)
+     * @return this var
+     */
+    public SimpleVar<T> propagateOn(Executor executor) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).propagateOn(executor);
+        return this;
+    }
+
+    /**
+     * Evaluates the vars that depend on this var in parallel on {@code pool}: when a change of this var makes at
+     * least {@code threshold} eager vars of the same dependency depth due, their functions run concurrently, and
+     * the next depth is evaluated once all of them are done. Below the threshold, or for vars that depend on each
+     * other, functions run one after another on the thread that propagates the change. The functions must not
+     * write to vars.
+     *
+     * @param pool      the pool, or {@code null} to evaluate on the propagating thread (the default)
+     * @param threshold the minimum number of vars of one depth to evaluate in parallel
+     * @return this var
+     */
+    public SimpleVar<T> evaluateOn(ForkJoinPool pool, int threshold) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).evaluateOn(pool, threshold);
+        return this;
+    }
+
+    @Override
+    public SimpleVar<T> fanOutOn(ForkJoinPool pool, int threshold) {
+        super.fanOutOn(pool, threshold);
+        return this;
+    }
+
+    /**
+     * Reports writes to this var to {@code metrics}, and the evaluations of the vars that are derived from it from
+     * now on. Vars that were derived before are not instrumented. With {@code null}, nothing is reported and the
+     * measurements cost nothing.
+     *
+     * @param metrics the metrics, or {@code null} to disable them (the default)
+     * @return this var
+     */
+    public SimpleVar<T> instrument(VarMetrics metrics) {
+        impl.setMetrics(metrics);
+        return this;
+    }
+
+    /**
+     * Traces the waves that publish writes to this var with {@code tracer}, which samples them and records a
+     * span tree per sampled wave. With {@code null}, waves are not traced and tracing costs nothing.
+     *
+     * @param tracer the tracer, or {@code null} to disable tracing (the default)
+     * @return this var
+     */
+    public SimpleVar<T> trace(VarTracer tracer) {
+        ((InternalPublisher.InternalSourcePublisher<?>) impl).setTracer(tracer);
+        return this;
+    }
 }
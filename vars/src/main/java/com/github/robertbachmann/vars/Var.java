@@ -1,12 +1,27 @@
 package com.github.robertbachmann.vars;
 
+import com.github.robertbachmann.vars.function.Function3;
+import com.github.robertbachmann.vars.function.Function4;
+import com.github.robertbachmann.vars.function.Function5;
+import com.github.robertbachmann.vars.function.Function6;
+import com.github.robertbachmann.vars.function.Function7;
+import com.github.robertbachmann.vars.function.Function8;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
@@ -28,7 +43,15 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
     }
 
     public static <T> SimpleVar<T> valueOf(T val) {
-        return new SimpleVar<>(val);
+        return new SimpleVar<>(val, Equivalence.equality());
+    }
+
+    /**
+     * Like {@link #valueOf(Object)}, but new values that are equivalent to the current value according to
+     * {@code equivalence} are not propagated.
+     */
+    public static <T> SimpleVar<T> valueOf(T val, Equivalence<? super T> equivalence) {
+        return new SimpleVar<>(val, equivalence);
     }
 
     public static <A, T> Var<T> map(Var<A> var1, Function<A, T> function) {
@@ -37,6 +60,16 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
         return create(() -> function.apply(var1.getLastValue()), var1);
     }
 
+    /**
+     * Like {@link #map(Var, Function)}, but results that are equivalent to the current value according to
+     * {@code equivalence} are not propagated.
+     */
+    public static <A, T> Var<T> map(Var<A> var1, Function<A, T> function, Equivalence<? super T> equivalence) {
+        requireNonNull(var1, "var1");
+        requireNonNull(function, "function");
+        return create(() -> function.apply(var1.getLastValue()), equivalence, var1);
+    }
+
     public static <A, T> Var<T> lazyMap(Var<A> var1, Function<A, T> function) {
         requireNonNull(var1, "var1");
         requireNonNull(function, "function");
@@ -50,6 +83,190 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
         return create(() -> function.apply(var1.getLastValue(), var2.getLastValue()), var1, var2);
     }
 
+    /**
+     * Like {@link #combine(Var, Var, BiFunction)}, but results that are equivalent to the current value according
+     * to {@code equivalence} are not propagated.
+     */
+    public static <A, B, T> Var<T> combine(Var<A> var1, Var<B> var2, BiFunction<A, B, T> function,
+                                           Equivalence<? super T> equivalence) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(function, "function");
+        return create(() -> function.apply(var1.getLastValue(), var2.getLastValue()), equivalence, var1, var2);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3,
+                                              Function3<A, B, C, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2]),
+                var1, var2, var3);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, D, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3, Var<D> var4,
+                                                 Function4<A, B, C, D, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(var4, "var4");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2],
+                (D) values[3]),
+                var1, var2, var3, var4);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, D, E, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3, Var<D> var4,
+                                                    Var<E> var5,
+                                                    Function5<A, B, C, D, E, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(var4, "var4");
+        requireNonNull(var5, "var5");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2],
+                (D) values[3], (E) values[4]),
+                var1, var2, var3, var4, var5);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, D, E, F, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3, Var<D> var4,
+                                                       Var<E> var5, Var<F> var6,
+                                                       Function6<A, B, C, D, E, F, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(var4, "var4");
+        requireNonNull(var5, "var5");
+        requireNonNull(var6, "var6");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2],
+                (D) values[3], (E) values[4], (F) values[5]),
+                var1, var2, var3, var4, var5, var6);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, D, E, F, G, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3, Var<D> var4,
+                                                          Var<E> var5, Var<F> var6, Var<G> var7,
+                                                          Function7<A, B, C, D, E, F, G, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(var4, "var4");
+        requireNonNull(var5, "var5");
+        requireNonNull(var6, "var6");
+        requireNonNull(var7, "var7");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2],
+                (D) values[3], (E) values[4], (F) values[5], (G) values[6]),
+                var1, var2, var3, var4, var5, var6, var7);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B, C, D, E, F, G, H, T> Var<T> combine(Var<A> var1, Var<B> var2, Var<C> var3, Var<D> var4,
+                                                             Var<E> var5, Var<F> var6, Var<G> var7, Var<H> var8,
+                                                             Function8<A, B, C, D, E, F, G, H, T> function) {
+        requireNonNull(var1, "var1");
+        requireNonNull(var2, "var2");
+        requireNonNull(var3, "var3");
+        requireNonNull(var4, "var4");
+        requireNonNull(var5, "var5");
+        requireNonNull(var6, "var6");
+        requireNonNull(var7, "var7");
+        requireNonNull(var8, "var8");
+        requireNonNull(function, "function");
+        return createCombined(values -> function.apply((A) values[0], (B) values[1], (C) values[2],
+                (D) values[3], (E) values[4], (F) values[5], (G) values[6], (H) values[7]),
+                var1, var2, var3, var4, var5, var6, var7, var8);
+    }
+
+    /**
+     * Derives a var from {@code supplier}, which may read any vars with {@link #get()}. The var depends on exactly
+     * the vars that were read during the last evaluation, e.g. {@code Var.compute(() -> flag.get() ? a.get() :
+     * b.get())} depends on {@code flag} and {@code a} while {@code flag} is true, and changes of {@code b} are not
+     * propagated to it. Reads with {@link #getLastValue()} are not tracked.
+     */
+    public static <T> Var<T> compute(Supplier<T> supplier) {
+        requireNonNull(supplier, "supplier");
+        return new Var<>(new InternalComputedPublisher<>(supplier).connect());
+    }
+
+    /**
+     * Combines any number of vars with a single re-calculation. {@code function} receives the current values of
+     * {@code vars} in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    public static <A, T> Var<T> combineAll(List<? extends Var<A>> vars, Function<List<A>, T> function) {
+        requireNonNull(function, "function");
+        Var<A>[] array = toArray(vars);
+        return createCombined(
+                values -> function.apply((List<A>) Collections.unmodifiableList(Arrays.asList(values))), array);
+    }
+
+    /**
+     * Sum of {@code vars}. A change of a single input is applied in constant time.
+     */
+    public static Var<Double> sum(Collection<? extends Var<Double>> vars) {
+        return new Var<>(new InternalAggregatePublisher.DoubleSum(toArray(vars)).connect());
+    }
+
+    /**
+     * Minimum of {@code vars}. A change of a single input is applied in O(log n).
+     */
+    public static <T extends Comparable<? super T>> Var<T> min(Collection<? extends Var<T>> vars) {
+        return new Var<>(new InternalAggregatePublisher.Reduce<>(toArray(vars), null,
+                BinaryOperator.minBy(Comparator.naturalOrder())).connect());
+    }
+
+    /**
+     * Maximum of {@code vars}. A change of a single input is applied in O(log n).
+     */
+    public static <T extends Comparable<? super T>> Var<T> max(Collection<? extends Var<T>> vars) {
+        return new Var<>(new InternalAggregatePublisher.Reduce<>(toArray(vars), null,
+                BinaryOperator.maxBy(Comparator.naturalOrder())).connect());
+    }
+
+    /**
+     * Number of {@code vars} whose value matches {@code predicate}. A change of a single input is applied in
+     * constant time.
+     */
+    public static <A> Var<Integer> count(Collection<? extends Var<A>> vars, Predicate<? super A> predicate) {
+        requireNonNull(predicate, "predicate");
+        return new Var<>(new InternalAggregatePublisher.Count<>(toArray(vars), predicate).connect());
+    }
+
+    /**
+     * Reduces {@code vars} in iteration order. {@code operator} must be associative and {@code identity} must be
+     * its identity element. A change of a single input is applied in O(log n).
+     */
+    public static <T> Var<T> reduce(Collection<? extends Var<T>> vars, T identity, BinaryOperator<T> operator) {
+        requireNonNull(identity, "identity");
+        requireNonNull(operator, "operator");
+        return new Var<>(new InternalAggregatePublisher.Reduce<>(toArray(vars), identity, operator).connect());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A> Var<A>[] toArray(Collection<? extends Var<A>> vars) {
+        requireNonNull(vars, "vars");
+        if (vars.isEmpty()) {
+            throw new IllegalArgumentException("vars is empty");
+        }
+        Var<A>[] array = vars.toArray(new Var[0]);
+        for (Var<A> var : array) {
+            requireNonNull(var, "vars contains null");
+        }
+        return array;
+    }
+
+    private static <T> Var<T> createCombined(Function<Object[], T> function, Var<?>... vars) {
+        return create(new InternalCombiner<>(vars, function), vars);
+    }
+
     public static <A, B, T> Var<T> lazyCombine(Var<A> var1, Var<B> var2, BiFunction<A, B, T> function) {
         requireNonNull(var1, "var1");
         requireNonNull(var2, "var2");
@@ -57,14 +274,70 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
         return createLazy(() -> function.apply(var1.getLastValue(), var2.getLastValue()), var1, var2);
     }
 
+    /**
+     * Runs {@code action} as a single change: writes to {@link SimpleVar}s are applied immediately, but published
+     * after {@code action} returns, so that every dependent var is re-calculated at most once. If {@code action}
+     * throws, its writes are discarded. Nested transactions join the outermost one: their writes are published with
+     * it, but a nested {@code action} that throws discards only its own writes.
+     */
+    public static void transaction(Runnable action) {
+        requireNonNull(action, "action");
+        InternalPropagation propagation = InternalPropagation.enter();
+        if (propagation.isOutermost()) {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                propagation.rollback();
+                throw t;
+            }
+            propagation.exit();
+            return;
+        }
+
+        InternalPropagation.Savepoint savepoint = propagation.savepoint();
+        try {
+            action.run();
+        } catch (Throwable t) {
+            propagation.rollbackTo(savepoint);
+            throw t;
+        }
+        propagation.release(savepoint);
+    }
+
     private static <T> Var<T> create(Supplier<T> supplier, Publisher<?>... vars) {
         return new Var<>(false, supplier, vars);
     }
 
+    private static <T> Var<T> create(Supplier<T> supplier, Equivalence<? super T> equivalence, Publisher<?>... vars) {
+        requireNonNull(equivalence, "equivalence");
+        return new Var<>(new InternalDerivedValuePublisher<>(false, supplier, equivalence, vars).connect());
+    }
+
     private static <T> Var<T> createLazy(Supplier<T> supplier, Publisher<?>... vars) {
         return new Var<>(true, supplier, vars);
     }
 
+    /**
+     * Caches the results of this var by the values of its inputs, evicting the least recently used of at most
+     * {@code maxEntries} entries. When the inputs return to values that were seen before, the cached result is
+     * used instead of calling the function again. The function must only depend on the values of the inputs.
+     * Only vars created by {@code map}, {@code combine} and {@code combineAll} can be memoized.
+     *
+     * @param maxEntries the maximum number of cached results
+     * @return a view of this var that reports cache hits and misses
+     */
+    public final MemoizedVar<T> memoized(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries < 1");
+        }
+        InternalMemo<T> memo = impl instanceof InternalDerivedValuePublisher
+                ? ((InternalDerivedValuePublisher<T>) impl).memoize(maxEntries) : null;
+        if (memo == null) {
+            throw new UnsupportedOperationException("only vars created by map, combine or combineAll can be memoized");
+        }
+        return new MemoizedVar<>(impl, memo);
+    }
+
     public final Throwable getThrowable() {
         return impl.getThrowable();
     }
@@ -74,8 +347,9 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
     }
 
     public final T get() {
-        if (isLazy()) {
-            impl.requestUpstream(1);
+        InternalPropagation.recordRead(impl);
+        if (impl.isLazy()) {
+            impl.refresh();
         }
         return impl.getValue();
     }
@@ -113,8 +387,74 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
         return doSubscribe(consumer, errorConsumer, completeAction);
     }
 
+    /**
+     * Subscribes {@code consumer} with a mailbox that holds the latest value: values are delivered on a virtual
+     * thread (on Java 21+, otherwise on a pooled daemon thread), so neither the writing thread nor other
+     * subscribers wait for {@code consumer}. A slow consumer skips intermediate values and only receives the
+     * latest one.
+     */
+    public final DisposableSubscription subscribeAsync(Consumer<? super T> consumer) {
+        return subscribeAsync(consumer, AsyncDisposableSubscriptionImpl.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Like {@link #subscribeAsync(Consumer)}, but values are delivered by tasks on {@code executor}. The consumer
+     * is never called concurrently. If {@code executor} rejects a task, the subscription is disposed.
+     */
+    public final DisposableSubscription subscribeAsync(Consumer<? super T> consumer, Executor executor) {
+        Objects.requireNonNull(consumer, "consumer");
+        Objects.requireNonNull(executor, "executor");
+        return doSubscribeAsync(consumer, null, executor);
+    }
+
+    /**
+     * Like {@link #subscribeAsync(Consumer, Executor)}, but an error of this var is passed to
+     * {@code errorConsumer} on {@code executor}, after the value that preceded it, and disposes the subscription.
+     * Neither consumer is called after {@link DisposableSubscription#dispose()} returned.
+     */
+    public final DisposableSubscription subscribeAsync(Consumer<? super T> consumer,
+                                                       Consumer<? super Throwable> errorConsumer, Executor executor) {
+        Objects.requireNonNull(consumer, "consumer");
+        Objects.requireNonNull(errorConsumer, "errorConsumer");
+        Objects.requireNonNull(executor, "executor");
+        return doSubscribeAsync(consumer, errorConsumer, executor);
+    }
+
+    private DisposableSubscription doSubscribeAsync(Consumer<? super T> consumer,
+                                                    Consumer<? super Throwable> errorConsumer, Executor executor) {
+        AsyncDisposableSubscriptionImpl<T> disposableSubscription =
+                new AsyncDisposableSubscriptionImpl<>(consumer, errorConsumer, executor);
+        impl.subscribe(disposableSubscription);
+        return disposableSubscription;
+    }
+
+    /**
+     * Delivers new values of this var to its subscribers in parallel on {@code pool}, as long as it has at least
+     * {@code threshold} subscribers. The subscribers are split into chunks, each subscriber still receives the values
+     * one at a time and in order, and a change is delivered to all subscribers before the next one. Derived vars
+     * are always updated on the thread that changed this var.
+     *
+     * @param pool      the pool, or {@code null} to deliver on the thread that changed this var (the default)
+     * @param threshold the minimum number of subscribers for parallel delivery
+     * @return this var
+     */
+    public Var<T> fanOutOn(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold < 1");
+        }
+        impl.fanOutOn(pool, threshold);
+        return this;
+    }
+
     public final boolean isLazy() {
-        return impl.isLazy();
+        return impl.isDeclaredLazy();
+    }
+
+    /**
+     * @return a number that identifies this var in {@link VarMetrics}, unique within the JVM
+     */
+    public final long getId() {
+        return impl.getId();
     }
 
     Var(InternalPublisher<T> publisher) {
@@ -122,6 +462,6 @@ public class Var<T> implements Publisher<T>, Supplier<T> {
     }
 
     protected Var(boolean lazy, Supplier<T> supplier, Publisher<?>[] vars) {
-        this.impl = new InternalDerivedValuePublisher<>(lazy, supplier, vars);
+        this.impl = new InternalDerivedValuePublisher<>(lazy, supplier, vars).connect();
     }
 }
@@ -0,0 +1,373 @@
+package com.github.robertbachmann.vars;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A snapshot of the vars that are connected to some vars, through their inputs and dependents, transitively. It
+ * can be exported as DOT ({@link #writeDot}) or JSON ({@link #writeJson}), optionally with the counters and the
+ * recompute rates of an {@link InMemoryVarMetrics}, e.g. to find vars with a large fan-out or deep chains.
+ * <p>
+ * The snapshot is taken without locking the graph (only a var created with {@link Var#compute} is locked briefly
+ * to read its inputs), so propagation continues while it is taken. It is not atomic: a var that is derived or
+ * collected meanwhile may or may not be included, and the values of the nodes are read at different times. The
+ * edges are consistent, the dependents of a node are the nodes that list it as an input. Derived vars without
+ * subscribers that are about to be garbage collected may still be included.
+ */
+public final class VarGraph {
+    private final List<Node> nodes;
+    private final Map<Long, Node> byId;
+
+    private VarGraph(List<Node> nodes) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.byId = new HashMap<>(nodes.size() * 2);
+        for (Node node : nodes) {
+            byId.put(node.id, node);
+        }
+    }
+
+    /**
+     * @param vars the vars to start from
+     * @return the graph of the vars that are connected to {@code vars}
+     */
+    public static VarGraph of(Var<?>... vars) {
+        return of(Arrays.asList(vars));
+    }
+
+    /**
+     * @param vars the vars to start from
+     * @return the graph of the vars that are connected to {@code vars}
+     */
+    public static VarGraph of(Collection<? extends Var<?>> vars) {
+        requireNonNull(vars, "vars");
+        IdentityHashMap<InternalPublisher<?>, Integer> indexes = new IdentityHashMap<>();
+        ArrayList<InternalPublisher<?>> publishers = new ArrayList<>();
+        for (Var<?> var : vars) {
+            visit(requireNonNull(var, "var").impl, indexes, publishers);
+        }
+
+        ArrayList<int[]> inputIndexes = new ArrayList<>();
+        int[] subscribers = new int[16];
+        ArrayList<InternalPublisher<?>> inputs = new ArrayList<>();
+        // publishers grows while it is traversed
+        for (int i = 0; i < publishers.size(); ++i) {
+            InternalPublisher<?> publisher = publishers.get(i);
+            inputs.clear();
+            publisher.collectUpstream(inputs);
+            int[] indexesOfInputs = new int[inputs.size()];
+            for (int j = 0; j < indexesOfInputs.length; ++j) {
+                indexesOfInputs[j] = visit(inputs.get(j), indexes, publishers);
+            }
+            inputIndexes.add(indexesOfInputs);
+
+            int external = 0;
+            for (InternalDownStreamSubscription<?> subscription : publisher.getDownStreamSubscriptions()) {
+                InternalDerivedValuePublisher<?> downstream = subscription.getDownstreamPublisher();
+                if (downstream != null) {
+                    visit(downstream, indexes, publishers);
+                } else if (subscription.isExternal()) {
+                    external++;
+                }
+            }
+            if (i == subscribers.length) {
+                subscribers = Arrays.copyOf(subscribers, i * 2);
+            }
+            subscribers[i] = external;
+        }
+
+        int n = publishers.size();
+        int[] dependentCounts = new int[n];
+        for (int[] indexesOfInputs : inputIndexes) {
+            for (int input : indexesOfInputs) {
+                dependentCounts[input]++;
+            }
+        }
+        long[][] dependents = new long[n][];
+        for (int i = 0; i < n; ++i) {
+            dependents[i] = new long[dependentCounts[i]];
+            dependentCounts[i] = 0;
+        }
+        for (int i = 0; i < n; ++i) {
+            for (int input : inputIndexes.get(i)) {
+                dependents[input][dependentCounts[input]++] = publishers.get(i).getId();
+            }
+        }
+
+        ArrayList<Node> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            InternalPublisher<?> publisher = publishers.get(i);
+            int[] indexesOfInputs = inputIndexes.get(i);
+            long[] inputIds = new long[indexesOfInputs.length];
+            for (int j = 0; j < inputIds.length; ++j) {
+                inputIds[j] = publishers.get(indexesOfInputs[j]).getId();
+            }
+            nodes.add(new Node(publisher.getId(),
+                    publisher instanceof InternalPublisher.InternalSourcePublisher,
+                    publisher.getRank(),
+                    publisher.isDeclaredLazy(),
+                    publisher instanceof InternalDerivedValuePublisher
+                            && ((InternalDerivedValuePublisher<?>) publisher).isSuspended(),
+                    subscribers[i], inputIds, dependents[i]));
+        }
+        nodes.sort(Comparator.comparingLong(Node::getId));
+        return new VarGraph(nodes);
+    }
+
+    private static int visit(InternalPublisher<?> publisher, IdentityHashMap<InternalPublisher<?>, Integer> indexes,
+                             ArrayList<InternalPublisher<?>> publishers) {
+        Integer index = indexes.get(publisher);
+        if (index == null) {
+            index = publishers.size();
+            indexes.put(publisher, index);
+            publishers.add(publisher);
+        }
+        return index;
+    }
+
+    /**
+     * @return the nodes ordered by {@link Var#getId() id}
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the node of {@code var}, or null if it is not part of the graph
+     */
+    public Node get(Var<?> var) {
+        return byId.get(var.getId());
+    }
+
+    /**
+     * @return the node with the {@link Var#getId() id} {@code id}, or null if it is not part of the graph
+     */
+    public Node get(long id) {
+        return byId.get(id);
+    }
+
+    public void writeDot(Appendable out) throws IOException {
+        writeDot(out, null);
+    }
+
+    /**
+     * Writes the graph in the DOT language of Graphviz. Source vars are boxes, lazy vars are dashed and suspended
+     * vars are dotted. Edges point from inputs to dependents.
+     *
+     * @param metrics the metrics the vars report to, to label the nodes with their counters and recompute rates,
+     *                or null
+     */
+    public void writeDot(Appendable out, InMemoryVarMetrics metrics) throws IOException {
+        long elapsedNanos = metrics != null ? metrics.getElapsedNanos() : 0L;
+        out.append("digraph vars {\n");
+        for (Node node : nodes) {
+            out.append("  v").append(Long.toString(node.id)).append(" [label=\"#")
+                    .append(Long.toString(node.id));
+            if (!node.source) {
+                out.append(" depth ").append(Integer.toString(node.depth));
+            }
+            if (node.subscribers > 0) {
+                out.append("\\n").append(Integer.toString(node.subscribers))
+                        .append(node.subscribers == 1 ? " subscriber" : " subscribers");
+            }
+            InMemoryVarMetrics.Stats stats = metrics != null ? metrics.get(node.id) : null;
+            if (stats != null) {
+                long count = node.source ? stats.getWrites() : stats.getEvaluations();
+                out.append("\\n").append(Long.toString(count)).append(node.source ? " writes, " : " recomputes, ")
+                        .append(formatRate(count, elapsedNanos)).append("/s");
+                if (stats.getFailures() > 0) {
+                    out.append(", ").append(Long.toString(stats.getFailures())).append(" failed");
+                }
+            }
+            out.append('"');
+            if (node.source) {
+                out.append(" shape=box");
+            }
+            if (node.suspended) {
+                out.append(" style=dotted");
+            } else if (node.lazy) {
+                out.append(" style=dashed");
+            }
+            out.append("];\n");
+        }
+        for (Node node : nodes) {
+            for (long dependent : node.dependents) {
+                out.append("  v").append(Long.toString(node.id))
+                        .append(" -> v").append(Long.toString(dependent)).append(";\n");
+            }
+        }
+        out.append("}\n");
+    }
+
+    public void writeJson(Appendable out) throws IOException {
+        writeJson(out, null);
+    }
+
+    /**
+     * Writes the graph as a JSON object with an array of nodes, which have the fields of {@link Node}. With
+     * metrics, the object has the field {@code elapsedNanos} and the nodes that recorded something have the
+     * counters of {@link InMemoryVarMetrics.Stats} and {@code evaluationsPerSecond}.
+     *
+     * @param metrics the metrics the vars report to, or null
+     */
+    public void writeJson(Appendable out, InMemoryVarMetrics metrics) throws IOException {
+        long elapsedNanos = metrics != null ? metrics.getElapsedNanos() : 0L;
+        out.append('{');
+        if (metrics != null) {
+            out.append("\"elapsedNanos\":").append(Long.toString(elapsedNanos)).append(',');
+        }
+        out.append("\"nodes\":[");
+        boolean first = true;
+        for (Node node : nodes) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"id\":").append(Long.toString(node.id))
+                    .append(",\"source\":").append(Boolean.toString(node.source))
+                    .append(",\"depth\":").append(Integer.toString(node.depth))
+                    .append(",\"lazy\":").append(Boolean.toString(node.lazy))
+                    .append(",\"suspended\":").append(Boolean.toString(node.suspended))
+                    .append(",\"subscribers\":").append(Integer.toString(node.subscribers))
+                    .append(",\"inputs\":");
+            appendArray(out, node.inputs);
+            out.append(",\"dependents\":");
+            appendArray(out, node.dependents);
+            InMemoryVarMetrics.Stats stats = metrics != null ? metrics.get(node.id) : null;
+            if (stats != null) {
+                out.append(",\"writes\":").append(Long.toString(stats.getWrites()))
+                        .append(",\"evaluations\":").append(Long.toString(stats.getEvaluations()))
+                        .append(",\"unchanged\":").append(Long.toString(stats.getUnchanged()))
+                        .append(",\"failures\":").append(Long.toString(stats.getFailures()))
+                        .append(",\"deliveries\":").append(Long.toString(stats.getDeliveries()))
+                        .append(",\"totalEvaluationNanos\":").append(Long.toString(stats.getTotalEvaluationNanos()))
+                        .append(",\"evaluationsPerSecond\":")
+                        .append(formatRate(stats.getEvaluations(), elapsedNanos));
+            }
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private static void appendArray(Appendable out, long[] values) throws IOException {
+        out.append('[');
+        for (int i = 0; i < values.length; ++i) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(Long.toString(values[i]));
+        }
+        out.append(']');
+    }
+
+    private static String formatRate(long count, long elapsedNanos) {
+        double rate = elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0.0;
+        return String.format(Locale.ROOT, "%.1f", rate);
+    }
+
+    /**
+     * A var in a {@link VarGraph}, with its state at the time of the snapshot.
+     */
+    public static final class Node {
+        private final long id;
+        private final boolean source;
+        private final int depth;
+        private final boolean lazy;
+        private final boolean suspended;
+        private final int subscribers;
+        private final long[] inputs;
+        private final long[] dependents;
+
+        Node(long id, boolean source, int depth, boolean lazy, boolean suspended, int subscribers, long[] inputs,
+             long[] dependents) {
+            this.id = id;
+            this.source = source;
+            this.depth = depth;
+            this.lazy = lazy;
+            this.suspended = suspended;
+            this.subscribers = subscribers;
+            this.inputs = inputs;
+            this.dependents = dependents;
+        }
+
+        /**
+         * @return the {@link Var#getId() id} of the var
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return true for a var that is written, e.g. a {@link SimpleVar}
+         */
+        public boolean isSource() {
+            return source;
+        }
+
+        /**
+         * @return 0 for source vars, otherwise one more than the highest depth of all inputs
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * @return true if the var was created lazy, see {@link Var#isLazy()}
+         */
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        /**
+         * @return true if the var is eager, but suspended because nobody observes it
+         */
+        public boolean isSuspended() {
+            return suspended;
+        }
+
+        /**
+         * @return the number of subscribers that are not derived vars
+         */
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        /**
+         * @return the ids of the vars this var is derived from, for a {@link Var#compute computed} var the vars
+         * that its last evaluation read, in no particular order
+         */
+        public long[] getInputs() {
+            return inputs.clone();
+        }
+
+        /**
+         * @return the ids of the vars that are derived from this var
+         */
+        public long[] getDependents() {
+            return dependents.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Node{id=" + id
+                    + ", source=" + source
+                    + ", depth=" + depth
+                    + ", lazy=" + lazy
+                    + ", suspended=" + suspended
+                    + ", subscribers=" + subscribers
+                    + ", inputs=" + Arrays.toString(inputs)
+                    + ", dependents=" + Arrays.toString(dependents)
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.robertbachmann.vars;
+
+/**
+ * Receives measurements of a graph of vars. Metrics are enabled on source vars with {@code instrument}, and vars
+ * that are derived from an instrumented var afterwards report to the same metrics. Vars are identified by
+ * {@link Var#getId()}.
+ * <p>
+ * Methods are called on the thread that propagates a change, {@link #evaluated} and {@link #failed} also on the
+ * threads of a parallel evaluation ({@link SimpleVar#evaluateOn}), so implementations must be thread-safe. They
+ * must be fast and must not throw. All methods do nothing by default. {@link InMemoryVarMetrics} is a registry
+ * that keeps counters and histograms in memory.
+ */
+public interface VarMetrics {
+    /**
+     * A write to the source var {@code var} was propagated, {@code changed} is false if the new value was
+     * equivalent to the previous one.
+     */
+    default void written(long var, boolean changed) {
+    }
+
+    /**
+     * The function of the derived var {@code var} returned after {@code nanos}, {@code changed} is false if the
+     * result was equivalent to the current value (and was suppressed).
+     */
+    default void evaluated(long var, long nanos, boolean changed) {
+    }
+
+    /**
+     * The function of the derived var {@code var} threw {@code error} after {@code nanos}.
+     */
+    default void failed(long var, long nanos, Throwable error) {
+    }
+
+    /**
+     * A value of {@code var} was delivered to a subscriber that is not a derived var.
+     */
+    default void delivered(long var) {
+    }
+
+    /**
+     * {@code var} now has {@code subscribers} subscribers, including derived vars.
+     */
+    default void subscribersChanged(long var, int subscribers) {
+    }
+
+    /**
+     * A propagation wave re-calculated {@code vars} derived vars in {@code nanos}. {@code root} is the first
+     * instrumented var the wave published or re-calculated, usually the var that was written.
+     */
+    default void waveCompleted(long root, int vars, long nanos) {
+    }
+
+    /**
+     * {@code var} was garbage collected and reports nothing more. Reported the next time a var is created or
+     * written after the collection.
+     */
+    default void collected(long var) {
+    }
+}
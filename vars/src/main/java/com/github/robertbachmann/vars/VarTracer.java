@@ -0,0 +1,332 @@
+package com.github.robertbachmann.vars;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the causality of propagation waves. Tracing is enabled on source vars with {@code trace}: a wave that
+ * publishes a write to a traced var is sampled with probability {@code sampleRate}, and a sampled wave records a
+ * span tree:
+ * <ul>
+ * <li>a {@link Span.Kind#WRITE WRITE} span per published write, the roots of the tree,</li>
+ * <li>a {@link Span.Kind#RECALCULATE RECALCULATE} span per re-calculated derived var, a child of the span whose
+ * change first scheduled it,</li>
+ * <li>a {@link Span.Kind#DELIVER DELIVER} span per {@code onNext} of a subscriber that is not a derived var, a
+ * child of the span that offered the value. Only vars that are traced or derived from a traced var record their
+ * deliveries, so that the deliveries of other vars do not look up the wave.</li>
+ * </ul>
+ * Only the thread that propagates the wave records spans: deliveries on the pool of {@code fanOutOn} and the
+ * consumers of {@code subscribeAsync} (whose span ends when the value is handed to the executor) are not
+ * covered, and the span of a var that is evaluated in parallel includes the wait for its batch. Lazy vars that
+ * are pulled during the wave are re-calculated in a wave of their own, which is not traced.
+ * <p>
+ * The last {@code capacity} traces are kept and can be exported as JSON ({@link #writeJson}) or in the Chrome
+ * trace event format ({@link #writeChromeTrace}), which {@code chrome://tracing} and Perfetto open.
+ */
+public final class VarTracer {
+    private final double sampleRate;
+    private final int capacity;
+    private final AtomicLong ids = new AtomicLong();
+    private final ArrayDeque<Trace> traces = new ArrayDeque<>();
+
+    /**
+     * @param sampleRate the probability that a wave is traced, between 0 and 1
+     * @param capacity   the number of traces to keep
+     */
+    public VarTracer(double sampleRate, int capacity) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate not in [0, 1]");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.sampleRate = sampleRate;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return a new trace if the wave that calls this method is sampled, otherwise null
+     */
+    InternalTrace sample() {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        return new InternalTrace(this, ids.incrementAndGet());
+    }
+
+    synchronized void record(Trace trace) {
+        if (traces.size() == capacity) {
+            traces.pollFirst();
+        }
+        traces.addLast(trace);
+    }
+
+    /**
+     * @return the recorded traces, oldest first
+     */
+    public synchronized List<Trace> getTraces() {
+        return Collections.unmodifiableList(new ArrayList<>(traces));
+    }
+
+    public synchronized void clear() {
+        traces.clear();
+    }
+
+    /**
+     * Writes the recorded traces as a JSON array of objects with the fields of {@link Trace}, and the spans as
+     * objects with the fields of {@link Span}.
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append('[');
+        boolean firstTrace = true;
+        for (Trace trace : getTraces()) {
+            if (!firstTrace) {
+                out.append(',');
+            }
+            firstTrace = false;
+            out.append("{\"id\":").append(Long.toString(trace.id))
+                    .append(",\"threadId\":").append(Long.toString(trace.threadId))
+                    .append(",\"threadName\":");
+            appendString(out, trace.threadName);
+            out.append(",\"startEpochMillis\":").append(Long.toString(trace.startEpochMillis))
+                    .append(",\"spans\":[");
+            boolean firstSpan = true;
+            for (Span span : trace.spans) {
+                if (!firstSpan) {
+                    out.append(',');
+                }
+                firstSpan = false;
+                out.append("{\"id\":").append(Long.toString(span.id))
+                        .append(",\"parent\":").append(Long.toString(span.parent))
+                        .append(",\"kind\":\"").append(span.kind.name())
+                        .append("\",\"var\":").append(Long.toString(span.var))
+                        .append(",\"startNanos\":").append(Long.toString(span.startNanos))
+                        .append(",\"durationNanos\":").append(Long.toString(span.durationNanos))
+                        .append(",\"outcome\":\"").append(span.outcome.name())
+                        .append("\"}");
+            }
+            out.append("]}");
+        }
+        out.append(']');
+    }
+
+    /**
+     * Writes the recorded traces in the Chrome trace event format: one complete event per span, with the trace,
+     * the span, its parent and its outcome as arguments, on the thread that propagated the wave.
+     */
+    public void writeChromeTrace(Appendable out) throws IOException {
+        out.append("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        for (Trace trace : getTraces()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":")
+                    .append(Long.toString(trace.threadId))
+                    .append(",\"args\":{\"name\":");
+            appendString(out, trace.threadName);
+            out.append("}}");
+            for (Span span : trace.spans) {
+                double start = trace.startEpochMillis * 1000.0 + span.startNanos / 1000.0;
+                out.append(",{\"name\":\"").append(span.kind.label).append(" #").append(Long.toString(span.var))
+                        .append("\",\"cat\":\"vars\",\"ph\":\"X\",\"pid\":1,\"tid\":")
+                        .append(Long.toString(trace.threadId))
+                        .append(",\"ts\":").append(Double.toString(start))
+                        .append(",\"dur\":").append(Double.toString(span.durationNanos / 1000.0))
+                        .append(",\"args\":{\"trace\":").append(Long.toString(trace.id))
+                        .append(",\"span\":").append(Long.toString(span.id))
+                        .append(",\"parent\":").append(Long.toString(span.parent))
+                        .append(",\"outcome\":\"").append(span.outcome.name())
+                        .append("\"}}");
+            }
+        }
+        out.append("]}");
+    }
+
+    private static void appendString(Appendable out, String s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * The span tree of one propagation wave.
+     */
+    public static final class Trace {
+        private final long id;
+        private final long threadId;
+        private final String threadName;
+        private final long startEpochMillis;
+        private final List<Span> spans;
+
+        Trace(long id, Thread thread, long startEpochMillis, List<Span> spans) {
+            this.id = id;
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.startEpochMillis = startEpochMillis;
+            this.spans = Collections.unmodifiableList(spans);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the thread that propagated the wave
+         */
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return the wall-clock time at which the wave was sampled, the spans start relative to it
+         */
+        public long getStartEpochMillis() {
+            return startEpochMillis;
+        }
+
+        /**
+         * @return the spans in the order in which they started
+         */
+        public List<Span> getSpans() {
+            return spans;
+        }
+
+        @Override
+        public String toString() {
+            return "Trace{id=" + id
+                    + ", threadName=" + threadName
+                    + ", startEpochMillis=" + startEpochMillis
+                    + ", spans=" + spans
+                    + '}';
+        }
+    }
+
+    /**
+     * A write, re-calculation or delivery within a {@link Trace}.
+     */
+    public static final class Span {
+        public enum Kind {
+            WRITE("write"), RECALCULATE("reCalculate"), DELIVER("onNext");
+
+            private final String label;
+
+            Kind(String label) {
+                this.label = label;
+            }
+        }
+
+        public enum Outcome {
+            /**
+             * The value was published or re-calculated, and differs from the previous one.
+             */
+            CHANGED,
+            /**
+             * The new value was equivalent to the previous one and was suppressed.
+             */
+            UNCHANGED,
+            /**
+             * The var was scheduled but did not need to be evaluated, e.g. because it is lazy and its inputs
+             * were refreshed to equivalent values.
+             */
+            SKIPPED,
+            /**
+             * The subscriber received the value.
+             */
+            DELIVERED,
+            /**
+             * The function of the var or the subscriber threw an exception.
+             */
+            FAILED
+        }
+
+        private final long id;
+        private final long parent;
+        private final Kind kind;
+        private final long var;
+        private final long startNanos;
+        private final long durationNanos;
+        private final Outcome outcome;
+
+        Span(long id, long parent, Kind kind, long var, long startNanos, long durationNanos, Outcome outcome) {
+            this.id = id;
+            this.parent = parent;
+            this.kind = kind;
+            this.var = var;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.outcome = outcome;
+        }
+
+        /**
+         * @return the id of the span, unique within its trace and greater than 0
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the span that caused this one, or 0 for a write
+         */
+        public long getParent() {
+            return parent;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the {@link Var#getId() id} of the written, re-calculated or delivering var
+         */
+        public long getVar() {
+            return var;
+        }
+
+        /**
+         * @return the start relative to {@link Trace#getStartEpochMillis()}
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public String toString() {
+            return "Span{id=" + id
+                    + ", parent=" + parent
+                    + ", kind=" + kind
+                    + ", var=" + var
+                    + ", startNanos=" + startNanos
+                    + ", durationNanos=" + durationNanos
+                    + ", outcome=" + outcome
+                    + '}';
+        }
+    }
+}
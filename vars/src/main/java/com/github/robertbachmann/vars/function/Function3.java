@@ -0,0 +1,9 @@
+package com.github.robertbachmann.vars.function;
+
+/**
+ * Represents a function that accepts 3 arguments and produces a result.
+ */
+@FunctionalInterface
+public interface Function3<A, B, C, R> {
+    R apply(A a, B b, C c);
+}
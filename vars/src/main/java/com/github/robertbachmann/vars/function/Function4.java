@@ -0,0 +1,9 @@
+package com.github.robertbachmann.vars.function;
+
+/**
+ * Represents a function that accepts 4 arguments and produces a result.
+ */
+@FunctionalInterface
+public interface Function4<A, B, C, D, R> {
+    R apply(A a, B b, C c, D d);
+}
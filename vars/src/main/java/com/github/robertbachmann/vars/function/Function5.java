@@ -0,0 +1,9 @@
+package com.github.robertbachmann.vars.function;
+
+/**
+ * Represents a function that accepts 5 arguments and produces a result.
+ */
+@FunctionalInterface
+public interface Function5<A, B, C, D, E, R> {
+    R apply(A a, B b, C c, D d, E e);
+}
@@ -0,0 +1,9 @@
+package com.github.robertbachmann.vars.function;
+
+/**
+ * Represents a function that accepts 6 arguments and produces a result.
+ */
+@FunctionalInterface
+public interface Function6<A, B, C, D, E, F, R> {
+    R apply(A a, B b, C c, D d, E e, F f);
+}
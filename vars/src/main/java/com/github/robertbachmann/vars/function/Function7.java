@@ -0,0 +1,9 @@
+package com.github.robertbachmann.vars.function;
+
+/**
+ * Represents a function that accepts 7 arguments and produces a result.
+ */
+@FunctionalInterface
+public interface Function7<A, B, C, D, E, F, G, R> {
+    R apply(A a, B b, C c, D d, E e, F f, G g);
+}
@@ -31,6 +31,10 @@ public abstract class SplitProcessor<T, R> implements Processor<T, R>, ErrorMapp
         });
     }
 
+    public final Publisher<T> getUpstream() {
+        return publisher;
+    }
+
     @Override
     public final void onSubscribe(Subscription s) {
         this.upStreamSubscription = s;
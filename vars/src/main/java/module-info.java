@@ -1,5 +1,6 @@
 module com.github.robertbachmann.vars {
     exports com.github.robertbachmann.vars;
+    exports com.github.robertbachmann.vars.function;
     exports com.github.robertbachmann.vars.support;
 
     requires org.reactivestreams;
@@ -164,10 +164,10 @@ public class ExampleTest extends SystemOutSpyingTest {
                 "Earnings: 200.0",
                 "Earnings after taxes: 150.0",
                 "-> Update Revenue to 1100.0",
-                "Earnings after taxes: 225.0",
-                "Taxes: 75.0",
+                "Revenue: 1100.0",
                 "Earnings: 300.0",
-                "Revenue: 1100.0");
+                "Taxes: 75.0",
+                "Earnings after taxes: 225.0");
     }
 
     @Test
@@ -0,0 +1,137 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+
+@Test
+public class ActivationTest {
+    @Test
+    public void testUnobservedVarIsNotRecalculated() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> b = Var.map(a, x -> {
+            count.incrementAndGet();
+            return x * 2;
+        });
+        assertEquals(1, count.get());
+        assertFalse(b.isLazy());
+
+        for (int i = 2; i <= 100; ++i) {
+            a.setValue(i);
+        }
+        assertEquals(1, count.get());
+
+        assertEquals(Integer.valueOf(200), b.get());
+        assertEquals(Integer.valueOf(200), b.get());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testSubscribeResumes() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> b = Var.map(a, x -> {
+            count.incrementAndGet();
+            return x * 2;
+        });
+        a.setValue(2);
+        a.setValue(3);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+        assertEquals(2, count.get());
+        subscriber.assertValuesOnly(6);
+
+        a.setValue(4);
+        a.setValue(5);
+        assertEquals(4, count.get());
+        subscriber.assertValuesOnly(6, 8, 10);
+    }
+
+    @Test
+    public void testDisposeSuspends() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> b = Var.map(a, x -> {
+            count.incrementAndGet();
+            return x * 2;
+        });
+        List<Integer> values = new ArrayList<>();
+        DisposableSubscription first = b.subscribe(values::add);
+        DisposableSubscription second = b.subscribe(values::add);
+        a.setValue(2);
+        assertEquals(2, count.get());
+
+        first.dispose();
+        a.setValue(3);
+        assertEquals(3, count.get());
+
+        second.dispose();
+        a.setValue(4);
+        a.setValue(5);
+        assertEquals(3, count.get());
+        assertEquals(Integer.valueOf(10), b.get());
+        assertEquals(4, count.get());
+    }
+
+    @Test
+    public void testChainIsResumedAndSuspended() {
+        SimpleIntVar a = IntVar.valueOf(0);
+        AtomicInteger count = new AtomicInteger();
+        IntVar tail = a;
+        for (int i = 0; i < 10; ++i) {
+            tail = IntVar.mapToInt(tail, x -> {
+                count.incrementAndGet();
+                return x + 1;
+            });
+        }
+        count.set(0);
+
+        a.setValue(1);
+        assertEquals(0, count.get());
+        assertEquals(11, tail.getAsInt());
+        assertEquals(10, count.get());
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        tail.subscribe(subscriber);
+        a.setValue(2);
+        assertEquals(20, count.get());
+        subscriber.assertValuesOnly(11, 12);
+
+        subscriber.cancel();
+        a.setValue(3);
+        assertEquals(20, count.get());
+        assertEquals(13, tail.getAsInt());
+        assertEquals(30, count.get());
+    }
+
+    @Test
+    public void testLazyDownstreamDoesNotResume() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> b = Var.map(a, x -> {
+            count.incrementAndGet();
+            return x * 2;
+        });
+        Var<Integer> c = Var.lazyMap(b, x -> x + 1);
+        assertEquals(Integer.valueOf(3), c.get());
+
+        a.setValue(2);
+        a.setValue(3);
+        assertEquals(1, count.get());
+        assertEquals(Integer.valueOf(7), c.get());
+        assertEquals(2, count.get());
+    }
+}
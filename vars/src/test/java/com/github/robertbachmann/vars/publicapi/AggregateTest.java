@@ -0,0 +1,172 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DoubleVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class AggregateTest {
+    @Test
+    public void testSum() {
+        List<SimpleVar<Double>> v = inputs(1000);
+        Var<Double> sum = Var.sum(v);
+        assertEquals(500500., sum.get());
+
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        v.get(0).setValue(1001.);
+        Var.transaction(() -> {
+            v.get(1).setValue(0.);
+            v.get(2).setValue(0.);
+        });
+
+        subscriber.assertValuesOnly(500500., 501500., 501495.);
+    }
+
+    @Test
+    public void testSumDoesNotDrift() {
+        List<SimpleVar<Double>> v = inputs(3);
+        Var<Double> sum = Var.sum(v);
+
+        for (int i = 0; i < 10_000; ++i) {
+            v.get(i % 3).setValue(i * 0.1);
+        }
+        v.get(0).setValue(0.1);
+        v.get(1).setValue(0.2);
+        v.get(2).setValue(0.3);
+
+        assertEquals(0.6, sum.get(), 1e-12);
+    }
+
+    @Test
+    public void testSumOfNonFiniteValues() {
+        List<SimpleVar<Double>> v = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            v.add(Var.valueOf(1.));
+        }
+        Var<Double> sum = Var.sum(v);
+
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        v.get(3).setValue(Double.POSITIVE_INFINITY);
+        v.get(3).setValue(1.);
+        v.get(5).setValue(2.);
+        v.get(0).setValue(Double.NaN);
+        v.get(0).setValue(Double.NEGATIVE_INFINITY);
+        v.get(1).setValue(Double.POSITIVE_INFINITY);
+        v.get(1).setValue(1.);
+        v.get(0).setValue(1.);
+
+        subscriber.assertValuesOnly(8., Double.POSITIVE_INFINITY, 8., 9., Double.NaN, Double.NEGATIVE_INFINITY,
+                Double.NaN, Double.NEGATIVE_INFINITY, 9.);
+    }
+
+    @Test
+    public void testSumOfDoubleVars() {
+        List<Var<Double>> v = new ArrayList<>();
+        v.add(DoubleVar.valueOf(1.5));
+        v.add(DoubleVar.valueOf(2.5));
+        Var<Double> sum = Var.sum(v);
+
+        assertEquals(4., sum.get());
+    }
+
+    @Test
+    public void testMinMax() {
+        List<SimpleVar<Double>> v = inputs(10);
+        Var<Double> min = Var.min(v);
+        Var<Double> max = Var.max(v);
+        assertEquals(1., min.get());
+        assertEquals(10., max.get());
+
+        v.get(0).setValue(42.);
+        assertEquals(2., min.get());
+        assertEquals(42., max.get());
+
+        v.get(0).setValue(-1.);
+        assertEquals(-1., min.get());
+        assertEquals(10., max.get());
+    }
+
+    @Test
+    public void testCount() {
+        List<SimpleVar<Double>> v = inputs(10);
+        Var<Integer> even = Var.count(v, d -> d % 2 == 0);
+        assertEquals(Integer.valueOf(5), even.get());
+
+        v.get(0).setValue(2.);
+        v.get(1).setValue(2.);
+        assertEquals(Integer.valueOf(6), even.get());
+    }
+
+    @Test
+    public void testReduceKeepsOrder() {
+        List<SimpleVar<String>> v = new ArrayList<>();
+        for (char c = 'a'; c <= 'e'; ++c) {
+            v.add(Var.valueOf(String.valueOf(c)));
+        }
+        Var<String> joined = Var.reduce(v, "", String::concat);
+        assertEquals("abcde", joined.get());
+
+        v.get(3).setValue("D");
+        assertEquals("abcDe", joined.get());
+    }
+
+    @Test
+    public void testReduceIsIncremental() {
+        List<SimpleVar<Double>> v = inputs(1024);
+        AtomicInteger count = new AtomicInteger();
+        Var<Double> sum = Var.reduce(v, 0., (a, b) -> {
+            count.incrementAndGet();
+            return a + b;
+        });
+        assertEquals(1023, count.get());
+
+        count.set(0);
+        v.get(512).setValue(0.);
+        assertEquals(10, count.get());
+        assertEquals(1024 * 1025 / 2 - 513., sum.get());
+    }
+
+    @Test
+    public void testErrorAndRecovery() {
+        List<SimpleVar<Double>> v = inputs(4);
+        Var<Double> max = Var.reduce(v, 0., (a, b) -> {
+            if (a < 0 || b < 0) {
+                throw new IllegalArgumentException("negative");
+            }
+            return Math.max(a, b);
+        });
+
+        v.get(1).setValue(-1.);
+        assertEquals("negative", max.getThrowable().getMessage());
+
+        v.get(1).setValue(100.);
+        assertEquals(null, max.getThrowable());
+        assertEquals(100., max.get());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmpty() {
+        Var.sum(Collections.emptyList());
+    }
+
+    private static List<SimpleVar<Double>> inputs(int n) {
+        List<SimpleVar<Double>> result = new ArrayList<>();
+        for (int i = 1; i <= n; ++i) {
+            result.add(Var.valueOf((double) i));
+        }
+        return result;
+    }
+}
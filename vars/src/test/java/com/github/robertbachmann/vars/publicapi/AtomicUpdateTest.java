@@ -0,0 +1,88 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class AtomicUpdateTest {
+    @Test
+    public void testCompareAndSet() {
+        Integer one = 1000;
+        SimpleVar<Integer> a = Var.valueOf(one);
+        Var<Integer> b = Var.map(a, x -> x * 2);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+
+        assertFalse(a.compareAndSet(999, 1001));
+        assertTrue(a.compareAndSet(one, 1001));
+        assertEquals(Integer.valueOf(1001), a.get());
+        subscriber.assertValuesOnly(2000, 2002);
+    }
+
+    @Test
+    public void testUpdateAndAccumulate() {
+        SimpleVar<String> a = Var.valueOf("a");
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+        a.subscribe(subscriber);
+
+        assertEquals("ab", a.updateAndGet(x -> x + "b"));
+        assertEquals("abc", a.accumulateAndGet("c", String::concat));
+        subscriber.assertValuesOnly("a", "ab", "abc");
+    }
+
+    @Test(timeOut = 30_000)
+    public void testConcurrentWritersLoseNoUpdates() throws InterruptedException {
+        int writers = 4;
+        int updates = 10_000;
+        SimpleVar<Integer> counter = Var.valueOf(0);
+        Var<Integer> doubled = Var.map(counter, x -> x * 2);
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        doubled.subscribe(values::add);
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < writers; ++i) {
+                executor.execute(() -> {
+                    await(start);
+                    for (int j = 0; j < updates; ++j) {
+                        counter.updateAndGet(x -> x + 1);
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(20, TimeUnit.SECONDS));
+        }
+
+        assertEquals(Integer.valueOf(writers * updates), counter.get());
+        assertEquals(Integer.valueOf(2 * writers * updates), doubled.get());
+        assertEquals(Integer.valueOf(2 * writers * updates), values.get(values.size() - 1));
+        for (int i = 1; i < values.size(); ++i) {
+            assertTrue("out of order: " + values.get(i - 1) + ", " + values.get(i),
+                    values.get(i - 1) < values.get(i));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class CombineTest {
+    @Test
+    public void testCombine3() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<String> b = Var.valueOf("x");
+        SimpleVar<Boolean> c = Var.valueOf(true);
+        Var<String> result = Var.combine(a, b, c, (x, y, z) -> x + y + z);
+
+        assertEquals("1xtrue", result.get());
+        b.setValue("y");
+        assertEquals("1ytrue", result.get());
+    }
+
+    @Test
+    public void testCombine6() {
+        List<SimpleVar<Integer>> v = inputs(6);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> sum = Var.combine(v.get(0), v.get(1), v.get(2), v.get(3), v.get(4), v.get(5),
+                (a, b, c, d, e, f) -> {
+                    count.incrementAndGet();
+                    return a + b + c + d + e + f;
+                });
+
+        assertEquals(Integer.valueOf(21), sum.get());
+        assertEquals(1, count.get());
+
+        v.get(5).setValue(60);
+        assertEquals(Integer.valueOf(75), sum.get());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testCombine8() {
+        List<SimpleVar<Integer>> v = inputs(8);
+        Var<Integer> sum = Var.combine(v.get(0), v.get(1), v.get(2), v.get(3), v.get(4), v.get(5), v.get(6), v.get(7),
+                (a, b, c, d, e, f, g, h) -> a + b + c + d + e + f + g + h);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        Var.transaction(() -> v.forEach(var -> var.setValue(var.get() * 10)));
+
+        subscriber.assertValuesOnly(36, 360);
+    }
+
+    @Test
+    public void testCombineAll() {
+        List<SimpleVar<Integer>> v = inputs(100);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> sum = Var.combineAll(v, values -> {
+            count.incrementAndGet();
+            return values.stream().mapToInt(Integer::intValue).sum();
+        });
+
+        assertEquals(Integer.valueOf(5050), sum.get());
+
+        v.get(42).setValue(0);
+        assertEquals(Integer.valueOf(5007), sum.get());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testCombineAllOrder() {
+        Var<String> joined = Var.combineAll(Arrays.asList(Var.valueOf("a"), Var.valueOf("b"), Var.valueOf("c")),
+                values -> String.join("", values));
+
+        assertEquals("abc", joined.get());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCombineAllEmpty() {
+        Var.combineAll(Collections.<Var<Integer>>emptyList(), values -> 0);
+    }
+
+    private static List<SimpleVar<Integer>> inputs(int n) {
+        List<SimpleVar<Integer>> result = new ArrayList<>();
+        for (int i = 1; i <= n; ++i) {
+            result.add(Var.valueOf(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import com.github.robertbachmann.vars.VarMetrics;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class ComputeTest {
+    @Test
+    public void testInactiveBranchIsNotPropagated() {
+        SimpleVar<Boolean> flag = Var.valueOf(true);
+        SimpleVar<String> a = Var.valueOf("a");
+        SimpleVar<String> b = Var.valueOf("b");
+        AtomicInteger count = new AtomicInteger();
+        Var<String> c = Var.compute(() -> {
+            count.incrementAndGet();
+            return flag.get() ? a.get() : b.get();
+        });
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+        c.subscribe(subscriber);
+        assertEquals("a", c.get());
+        assertEquals(1, count.get());
+
+        b.setValue("b2");
+        assertEquals(1, count.get());
+
+        a.setValue("a2");
+        assertEquals("a2", c.get());
+        assertEquals(2, count.get());
+
+        flag.setValue(false);
+        assertEquals("b2", c.get());
+        assertEquals(3, count.get());
+
+        a.setValue("a3");
+        assertEquals(3, count.get());
+
+        b.setValue("b3");
+        assertEquals("b3", c.get());
+        assertEquals(4, count.get());
+        subscriber.assertValuesOnly("a", "a2", "b2", "b3");
+    }
+
+    @Test
+    public void testRankIsRaisedWithNewDependencies() {
+        SimpleVar<Boolean> flag = Var.valueOf(false);
+        SimpleIntVar x = IntVar.valueOf(1);
+        Var<Integer> deep = Var.map(Var.map(Var.map(x, v -> v + 1), v -> v + 1), v -> v + 1);
+        Var<Integer> c = Var.compute(() -> flag.get() ? deep.get() : 0);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> d = Var.combine(c, x, (u, v) -> {
+            count.incrementAndGet();
+            return u + v;
+        });
+        assertEquals(Integer.valueOf(1), d.get());
+
+        flag.setValue(true);
+        assertEquals(Integer.valueOf(5), d.get());
+
+        // c and d now rank above deep, so d sees the settled value of c and is re-calculated once
+        count.set(0);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        d.subscribe(subscriber);
+        x.setValue(2);
+        assertEquals(Integer.valueOf(7), d.get());
+        assertEquals(1, count.get());
+        subscriber.assertValuesOnly(5, 7);
+    }
+
+    @Test
+    public void testErrorsAndRecovery() {
+        SimpleIntVar divisor = IntVar.valueOf(1);
+        Var<Integer> c = Var.compute(() -> 10 / divisor.getAsInt());
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        c.subscribe(subscriber);
+
+        divisor.setValue(0);
+        subscriber.assertError(ArithmeticException.class);
+
+        // the read was recorded before the failure, so the var recovers
+        divisor.setValue(2);
+        assertEquals(Integer.valueOf(5), c.get());
+    }
+
+    @Test
+    public void testFailedEvaluationKeepsDependencies() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(10);
+        AtomicBoolean broken = new AtomicBoolean();
+        Var<Integer> c = Var.compute(() -> {
+            int x = b.get();
+            if (broken.get()) {
+                throw new IllegalStateException("broken");
+            }
+            return x + a.get();
+        });
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        c.subscribe(subscriber);
+
+        // the evaluation throws before a is read
+        broken.set(true);
+        b.setValue(20);
+        subscriber.assertError(IllegalStateException.class);
+
+        broken.set(false);
+        a.setValue(2);
+        assertEquals(Integer.valueOf(22), c.get());
+    }
+
+    @Test
+    public void testNestedVarsAreNotRecorded() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(10);
+        Var<Integer> lazy = Var.lazyMap(b, v -> v * 2);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> c = Var.compute(() -> {
+            count.incrementAndGet();
+            return a.get() + Var.map(b, v -> v).getLastValue() + lazy.get();
+        });
+        assertEquals(Integer.valueOf(31), c.get());
+        assertEquals(1, count.get());
+
+        b.setValue(20);
+        // lazy is read, b is only read by the nested var
+        assertEquals(Integer.valueOf(61), c.get());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testRepeatedReadsDoNotResubscribe() {
+        AtomicInteger subscriptionChanges = new AtomicInteger();
+        VarMetrics metrics = new VarMetrics() {
+            @Override
+            public void subscribersChanged(long var, int subscribers) {
+                subscriptionChanges.incrementAndGet();
+            }
+        };
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(metrics);
+        SimpleVar<Integer> b = Var.valueOf(2).instrument(metrics);
+        Var<Integer> c = Var.compute(() -> a.get() + b.get() + a.get() * b.get());
+        assertEquals(Integer.valueOf(5), c.get());
+        assertEquals(2, subscriptionChanges.get());
+
+        for (int i = 2; i < 10; ++i) {
+            a.setValue(i);
+            b.setValue(i);
+        }
+        assertEquals(Integer.valueOf(99), c.get());
+        assertEquals(2, subscriptionChanges.get());
+    }
+}
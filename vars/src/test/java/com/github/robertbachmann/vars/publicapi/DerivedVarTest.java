@@ -6,6 +6,10 @@ import io.reactivex.processors.BehaviorProcessor;
 import io.reactivex.subscribers.TestSubscriber;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.testng.AssertJUnit.assertEquals;
 
 @Test
@@ -139,4 +143,73 @@ public class DerivedVarTest {
         taxesSubscriber.assertValuesOnly(50., 40.).assertSubscribed();
         earningsAfterTaxesSubscriber.assertValuesOnly(150., 160.).assertSubscribed();
     }
+
+    @Test
+    public void testDiamondRecalculatedOnce() {
+        SimpleVar<Double> revenue = Var.valueOf(1000.);
+        SimpleVar<Double> expenses = Var.valueOf(800.);
+        SimpleVar<Double> taxRate = Var.valueOf(0.25);
+        AtomicInteger count = new AtomicInteger();
+
+        Var<Double> earnings = Var.combine(revenue, expenses, (e, a) -> e - a);
+        Var<Double> taxes = Var.combine(earnings, taxRate, (g, s) -> g * s);
+        Var<Double> earningsAfterTaxes = Var.combine(earnings, taxes, (a, b) -> {
+            count.incrementAndGet();
+            return a - b;
+        });
+        assertEquals(1, count.get());
+
+        List<String> seen = new ArrayList<>();
+        earningsAfterTaxes.subscribe(d -> seen.add(earnings.get() + "-" + taxes.get() + "=" + d));
+
+        revenue.setValue(1100.);
+        assertEquals(2, count.get());
+
+        taxRate.setValue(0.5);
+        assertEquals(3, count.get());
+
+        assertEquals("[200.0-50.0=150.0, 300.0-75.0=225.0, 300.0-150.0=150.0]", seen.toString());
+    }
+
+    @Test
+    public void testNoGlitch() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        Var<Integer> shortPath = Var.map(a, x -> x);
+        Var<Integer> b = Var.map(a, x -> x * 2);
+        Var<Integer> longPath = Var.map(b, x -> x + 1);
+        Var<Boolean> consistent = Var.combine(shortPath, longPath, (x, y) -> y == x * 2 + 1);
+
+        TestSubscriber<Boolean> subscriber = new TestSubscriber<>();
+        consistent.subscribe(subscriber);
+
+        a.setValue(2);
+        a.setValue(3);
+
+        subscriber.assertValuesOnly(true);
+    }
+
+    @Test
+    public void testDeepChain() {
+        int length = 100_000;
+        SimpleVar<Integer> var = Var.valueOf(0);
+        Var<Integer> head = Var.map(var, a -> {
+            if (a < 0) {
+                throw new IllegalArgumentException("value < 0");
+            }
+            return a;
+        });
+        Var<Integer> tail = head;
+        for (int i = 0; i < length; ++i) {
+            tail = Var.map(tail, a -> a + 1);
+        }
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        tail.subscribe(subscriber);
+
+        var.setValue(1);
+        subscriber.assertValuesOnly(length, length + 1);
+
+        var.setValue(-1);
+        subscriber.assertErrorMessage("value < 0");
+    }
 }
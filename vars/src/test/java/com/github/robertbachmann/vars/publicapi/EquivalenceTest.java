@@ -0,0 +1,105 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.Equivalence;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class EquivalenceTest {
+    @Test
+    public void testToleranceDoesNotAccumulate() {
+        SimpleVar<Double> a = Var.valueOf(1.0, Equivalence.tolerance(1e-9));
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        a.subscribe(subscriber);
+
+        a.setValue(1.0 + 6e-10);
+        assertEquals(1.0, a.get());
+        a.setValue(1.0 + 12e-10);
+        assertEquals(1.0 + 12e-10, a.get());
+        subscriber.assertValuesOnly(1.0, 1.0 + 12e-10);
+    }
+
+    @Test
+    public void testDerivedVarWithTolerance() {
+        SimpleVar<Double> a = Var.valueOf(100.0);
+        AtomicInteger count = new AtomicInteger();
+        Var<Double> b = Var.map(a, x -> x / 3, Equivalence.relativeTolerance(1e-3));
+        Var<Double> c = Var.map(b, x -> {
+            count.incrementAndGet();
+            return x * 3;
+        });
+
+        a.setValue(100.01);
+        assertEquals(100.0, c.get(), 1e-12);
+        assertEquals(1, count.get());
+
+        a.setValue(101.0);
+        assertEquals(101.0, c.get(), 1e-12);
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testIdentity() {
+        List<Integer> list = new ArrayList<>(Arrays.asList(1, 2, 3));
+        SimpleVar<List<Integer>> a = Var.valueOf(list, Equivalence.identity());
+        Var<List<Integer>> b = Var.combine(a, Var.valueOf(0), (x, y) -> new ArrayList<>(x), Equivalence.identity());
+        TestSubscriber<List<Integer>> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+
+        a.setValue(new ArrayList<>(list));
+        // equal, but a new instance
+        subscriber.assertValueCount(2);
+    }
+
+    @Test
+    public void testEqualValueIsStoredButNotPropagated() {
+        List<Integer> list = new ArrayList<>(Arrays.asList(1, 2, 3));
+        SimpleVar<List<Integer>> a = Var.valueOf(list);
+        SimpleVar<List<Integer>> b = Var.valueOf(list, Equivalence.hashFirst());
+        List<Integer> copy = new ArrayList<>(list);
+        a.setValue(copy);
+        b.setValue(copy);
+        assertSame(copy, a.get());
+        assertSame(copy, b.get());
+
+        SimpleVar<Integer> n = Var.valueOf(1);
+        Var<List<Integer>> parity = Var.map(n, x -> Arrays.asList(x % 2));
+        TestSubscriber<List<Integer>> subscriber = new TestSubscriber<>();
+        parity.subscribe(subscriber);
+
+        n.setValue(3);
+        // re-calculated to an equal list, which replaces the current one
+        subscriber.assertValueCount(1);
+        assertTrue(subscriber.values().get(0) != parity.get());
+        assertEquals(Arrays.asList(1), parity.get());
+    }
+
+    @Test
+    public void testBuiltInEquivalences() {
+        assertTrue(Equivalence.<String>equality().equivalent("a", new String("a")));
+        assertFalse(Equivalence.<String>identity().equivalent("a", new String("a")));
+        assertTrue(Equivalence.hashFirst().equivalent(Arrays.asList(1, 2), Arrays.asList(1, 2)));
+        assertFalse(Equivalence.hashFirst().equivalent(Arrays.asList(1, 2), Arrays.asList(2, 1)));
+        assertTrue(Equivalence.tolerance(0.5).equivalent(1, 1.5));
+        assertFalse(Equivalence.tolerance(0.5).equivalent(1, 1.6));
+        assertTrue(Equivalence.relativeTolerance(0.01).equivalent(1000, 1009));
+        assertFalse(Equivalence.relativeTolerance(0.01).equivalent(1, 1.02));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeTolerance() {
+        Equivalence.tolerance(-1);
+    }
+}
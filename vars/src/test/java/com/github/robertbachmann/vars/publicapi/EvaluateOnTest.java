@@ -0,0 +1,106 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class EvaluateOnTest {
+    @Test(timeOut = 10_000)
+    public void testIndependentVarsEvaluateConcurrently() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SimpleVar<Integer> curve = Var.valueOf(0).evaluateOn(pool, 4);
+            CountDownLatch running = new CountDownLatch(4);
+            List<Var<Integer>> metrics = new ArrayList<>();
+            for (int i = 0; i < 4; ++i) {
+                int offset = i;
+                metrics.add(Var.map(curve, x -> {
+                    if (x > 0) {
+                        // completes only if all four functions run at the same time
+                        running.countDown();
+                        await(running);
+                    }
+                    return x + offset;
+                }));
+                // only observed vars are evaluated when the curve changes
+                metrics.get(i).subscribe(new TestSubscriber<>());
+            }
+            Var<Integer> total = Var.combine(metrics.get(0), metrics.get(3), Integer::sum);
+
+            curve.setValue(10);
+            for (int i = 0; i < 4; ++i) {
+                assertEquals(Integer.valueOf(10 + i), metrics.get(i).get());
+            }
+            assertEquals(Integer.valueOf(23), total.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBelowThresholdEvaluatesOnPropagatingThread() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            SimpleIntVar a = IntVar.valueOf(1).evaluateOn(pool, 3);
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            Var<Integer> b = Var.map(a, x -> {
+                threads.add(Thread.currentThread());
+                return x * 2;
+            });
+            Var<Integer> c = Var.map(a, x -> {
+                threads.add(Thread.currentThread());
+                return x * 3;
+            });
+            a.setValue(2);
+            assertEquals(Integer.valueOf(4), b.get());
+            assertEquals(Integer.valueOf(6), c.get());
+            assertEquals(1, threads.size());
+            assertTrue(threads.contains(Thread.currentThread()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testErrorsAndSubscribers() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            SimpleVar<Integer> a = Var.valueOf(1).evaluateOn(pool, 2);
+            Var<Integer> b = Var.map(a, x -> 10 / (x - 2));
+            Var<Integer> c = Var.map(a, x -> x * 2);
+            TestSubscriber<Integer> bSubscriber = new TestSubscriber<>();
+            TestSubscriber<Integer> cSubscriber = new TestSubscriber<>();
+            b.subscribe(bSubscriber);
+            c.subscribe(cSubscriber);
+
+            a.setValue(2);
+            bSubscriber.assertError(ArithmeticException.class);
+            cSubscriber.assertValuesOnly(2, 4);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
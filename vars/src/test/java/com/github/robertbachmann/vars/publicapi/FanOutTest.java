@@ -0,0 +1,90 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class FanOutTest {
+    @Test(timeOut = 10_000)
+    public void testParallelFanOutPreservesOrder() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SimpleVar<Integer> a = Var.valueOf(0).fanOutOn(pool, 100);
+            Var<Integer> b = Var.map(a, x -> x * 10);
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            List<List<Integer>> received = new ArrayList<>();
+            List<DisposableSubscription> subscriptions = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                List<Integer> values = new CopyOnWriteArrayList<>();
+                received.add(values);
+                subscriptions.add(a.subscribe(x -> {
+                    threads.add(Thread.currentThread());
+                    values.add(x);
+                }));
+            }
+
+            for (int i = 1; i <= 20; ++i) {
+                a.setValue(i);
+                assertEquals(Integer.valueOf(i * 10), b.get());
+            }
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i <= 20; ++i) {
+                expected.add(i);
+            }
+            for (List<Integer> values : received) {
+                assertEquals(expected, values);
+            }
+            assertTrue(threads.stream().anyMatch(t -> t != Thread.currentThread()));
+            subscriptions.forEach(DisposableSubscription::dispose);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBelowThresholdDeliversOnWritingThread() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            SimpleVar<Integer> a = Var.valueOf(0);
+            a.fanOutOn(pool, 100);
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            List<Integer> values = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 10; ++i) {
+                a.subscribe(x -> {
+                    threads.add(Thread.currentThread());
+                    values.add(x);
+                });
+            }
+            a.setValue(1);
+            assertEquals(20, values.size());
+            assertEquals(Arrays.asList(Thread.currentThread()), new ArrayList<>(threads));
+
+            a.fanOutOn(null, 1);
+            a.setValue(2);
+            assertEquals(30, values.size());
+            assertFalse(threads.size() > 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        Var.valueOf(0).fanOutOn(ForkJoinPool.commonPool(), 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import com.github.robertbachmann.vars.VarMetrics;
+import org.testng.annotations.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class GarbageCollectionTest {
+    @Test(timeOut = 30_000)
+    public void testUnreachableDerivedVarIsCollected() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        WeakReference<Var<Integer>> b = new WeakReference<>(Var.map(Var.map(a, x -> {
+            count.incrementAndGet();
+            return x + 1;
+        }), x -> x * 2));
+
+        awaitCollected(b);
+        // the chain is collected one var per collection, once the subscription of the collected var is cancelled
+        int rounds = 0;
+        do {
+            gc();
+            count.set(0);
+            a.setValue(a.get() + 1);
+        } while (count.get() != 0 && ++rounds < 10);
+        assertEquals(0, count.get());
+    }
+
+    @Test(timeOut = 30_000)
+    public void testSubscribedVarIsRetained() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        List<Integer> values = new CopyOnWriteArrayList<>();
+        DisposableSubscription subscription = Var.map(Var.map(a, x -> x + 1), x -> x * 2).subscribe(values::add);
+
+        gc();
+        a.setValue(2);
+        assertEquals(2, values.size());
+
+        subscription.dispose();
+        gc();
+        a.setValue(3);
+        assertEquals(2, values.size());
+    }
+
+    /**
+     * Millions of temporary derivations neither grow the heap nor the registry of the var they are derived from.
+     */
+    @Test(timeOut = 120_000)
+    public void testTemporaryDerivationsSoak() {
+        AtomicInteger subscribers = new AtomicInteger();
+        SimpleVar<Integer> a = Var.valueOf(0);
+        long id = a.getId();
+        a.instrument(new VarMetrics() {
+            @Override
+            public void subscribersChanged(long var, int count) {
+                if (var == id) {
+                    subscribers.set(count);
+                }
+            }
+        });
+        long baseline = 0;
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 200_000; ++i) {
+                Var<Integer> temporary = Var.map(a, x -> x + 1);
+                // a subscriber makes the edge live, so that the var is retained and re-calculated until it is
+                // disposed, and weakly referenced afterwards
+                temporary.subscribe(x -> {
+                }).dispose();
+                assertNotNull(temporary.get());
+            }
+
+            // the subscriptions of collected vars are cancelled the next time a publishes
+            int rounds = 0;
+            do {
+                gc();
+                a.setValue(a.get() + 1);
+            } while (subscribers.get() > 0 && ++rounds < 10);
+            assertEquals("temporary vars still subscribed after gc", 0, subscribers.get());
+
+            gc();
+            long used = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+            if (round == 1) {
+                baseline = used;
+            } else if (round > 1) {
+                assertTrue("heap grew from " + baseline + " to " + used, used < baseline + (32 << 20));
+            }
+        }
+    }
+
+    private static void awaitCollected(WeakReference<?> reference) {
+        while (reference.get() != null) {
+            gc();
+        }
+    }
+
+    private static void gc() {
+        System.gc();
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
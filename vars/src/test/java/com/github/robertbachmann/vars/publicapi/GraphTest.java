@@ -0,0 +1,151 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.InMemoryVarMetrics;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import com.github.robertbachmann.vars.VarGraph;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class GraphTest {
+    @Test
+    public void testNodes() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        Var<Integer> c = Var.lazyMap(b, x -> x * 2);
+        Var<Integer> d = Var.combine(a, b, (x, y) -> x + y);
+        Var<Integer> unobserved = Var.map(a, x -> -x);
+        d.subscribe(x -> {
+        });
+        d.subscribe(x -> {
+        });
+
+        // any var of the graph finds all of it
+        VarGraph graph = VarGraph.of(c);
+        assertEquals(5, graph.getNodes().size());
+
+        VarGraph.Node nodeOfA = graph.get(a);
+        assertTrue(nodeOfA.isSource());
+        assertEquals(0, nodeOfA.getDepth());
+        assertEquals(0, nodeOfA.getInputs().length);
+        assertEquals(3, nodeOfA.getDependents().length);
+
+        VarGraph.Node nodeOfB = graph.get(b);
+        assertFalse(nodeOfB.isSource());
+        assertEquals(1, nodeOfB.getDepth());
+        assertFalse(nodeOfB.isSuspended());
+        assertEquals(a.getId(), nodeOfB.getInputs()[0]);
+        assertEquals(2, nodeOfB.getDependents().length);
+
+        VarGraph.Node nodeOfC = graph.get(c);
+        assertTrue(nodeOfC.isLazy());
+        assertEquals(2, nodeOfC.getDepth());
+
+        VarGraph.Node nodeOfD = graph.get(d);
+        assertEquals(2, nodeOfD.getDepth());
+        assertEquals(2, nodeOfD.getSubscribers());
+        assertEquals(2, nodeOfD.getInputs().length);
+
+        assertTrue(graph.get(unobserved).isSuspended());
+        assertFalse(graph.get(unobserved).isLazy());
+        assertNull(graph.get(Var.valueOf(1)));
+    }
+
+    @Test
+    public void testComputedInputs() {
+        SimpleVar<Boolean> flag = Var.valueOf(true);
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(2);
+        Var<Integer> e = Var.compute(() -> flag.get() ? a.get() : b.get());
+
+        VarGraph graph = VarGraph.of(e);
+        assertEquals(3, graph.getNodes().size());
+        assertNull(graph.get(b));
+
+        flag.setValue(false);
+        graph = VarGraph.of(e);
+        long[] inputs = graph.get(e).getInputs();
+        Arrays.sort(inputs);
+        assertTrue(Arrays.equals(new long[]{flag.getId(), b.getId()}, inputs));
+        assertNull(graph.get(a));
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        InMemoryVarMetrics metrics = new InMemoryVarMetrics();
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(metrics);
+        Var<Integer> b = Var.lazyMap(a, x -> x + 1);
+        Var<Integer> c = Var.map(a, x -> x * 2);
+        c.subscribe(x -> {
+        });
+        a.setValue(2);
+
+        VarGraph graph = VarGraph.of(a);
+        StringBuilder dot = new StringBuilder();
+        graph.writeDot(dot, metrics);
+        String s = dot.toString();
+        assertTrue(s, s.startsWith("digraph vars {\n"));
+        assertTrue(s, s.contains("  v" + a.getId() + " -> v" + b.getId() + ";\n"));
+        assertTrue(s, s.contains("  v" + a.getId() + " [label=\"#" + a.getId() + "\\n1 writes, "));
+        assertTrue(s, s.contains("  v" + c.getId() + " [label=\"#" + c.getId()
+                + " depth 1\\n1 subscriber\\n2 recomputes, "));
+        assertTrue(s, s.contains(" style=dashed];\n"));
+
+        StringBuilder json = new StringBuilder();
+        graph.writeJson(json, metrics);
+        s = json.toString();
+        assertTrue(s, s.startsWith("{\"elapsedNanos\":"));
+        assertTrue(s, s.contains("{\"id\":" + b.getId() + ",\"source\":false,\"depth\":1,\"lazy\":true,"
+                + "\"suspended\":false,\"subscribers\":0,\"inputs\":[" + a.getId() + "],\"dependents\":[]"));
+        assertTrue(s, s.contains("\"evaluationsPerSecond\":"));
+
+        json.setLength(0);
+        graph.writeJson(json);
+        assertFalse(json.toString().contains("elapsedNanos"));
+    }
+
+    @Test
+    public void testConcurrentChanges() throws InterruptedException {
+        SimpleVar<Integer> a = Var.valueOf(0);
+        List<Var<Integer>> vars = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            vars.add(Var.map(a, x -> x + 1));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            int i = 0;
+            while (!done.get()) {
+                a.setValue(++i);
+                Var<Integer> temporary = Var.map(a, x -> x - 1);
+                temporary.subscribe(x -> {
+                }).dispose();
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 50; ++i) {
+                VarGraph graph = VarGraph.of(a);
+                assertTrue(graph.getNodes().size() >= 101);
+                for (VarGraph.Node node : graph.getNodes()) {
+                    for (long input : node.getInputs()) {
+                        assertTrue(graph.get(input) != null);
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+}
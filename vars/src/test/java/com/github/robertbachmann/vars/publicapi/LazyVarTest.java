@@ -5,6 +5,9 @@ import com.github.robertbachmann.vars.Var;
 import io.reactivex.subscribers.TestSubscriber;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
 import static org.testng.AssertJUnit.*;
 
 @SuppressWarnings("Duplicates")
@@ -157,4 +160,104 @@ public class LazyVarTest {
         s.request(1);
         s.assertValuesOnly(1002, 1006);
     }
+
+    @Test
+    public void testCleanReadDoesNotRecalculate() {
+        SimpleVar<Integer> var = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> var2 = Var.lazyMap(var, x -> {
+            count.incrementAndGet();
+            return x * 2;
+        });
+        Var<Integer> var3 = Var.lazyMap(var2, x -> x + 1);
+
+        assertEquals(Integer.valueOf(3), var3.get());
+        assertEquals(Integer.valueOf(3), var3.get());
+        assertEquals(Integer.valueOf(2), var2.get());
+        assertEquals(1, count.get());
+
+        var.setValue(5);
+        assertEquals(1, count.get());
+        assertEquals(Integer.valueOf(11), var3.get());
+        assertEquals(Integer.valueOf(11), var3.get());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testOnlyStaleInputsRecalculated() {
+        SimpleVar<Integer> var1 = Var.valueOf(1);
+        SimpleVar<Integer> var2 = Var.valueOf(2);
+        AtomicInteger count1 = new AtomicInteger();
+        AtomicInteger count2 = new AtomicInteger();
+        Var<Integer> lazy1 = Var.lazyMap(var1, x -> {
+            count1.incrementAndGet();
+            return x * 10;
+        });
+        Var<Integer> lazy2 = Var.lazyMap(var2, x -> {
+            count2.incrementAndGet();
+            return x * 10;
+        });
+        Var<Integer> sum = Var.lazyCombine(lazy1, lazy2, (x, y) -> x + y);
+
+        assertEquals(Integer.valueOf(30), sum.get());
+        var1.setValue(3);
+        assertEquals(Integer.valueOf(50), sum.get());
+
+        assertEquals(2, count1.get());
+        assertEquals(1, count2.get());
+    }
+
+    @Test(timeOut = 10_000)
+    public void testDeepLazyDiamonds() {
+        int depth = 64; // 2^64 paths from the top to the bottom
+        SimpleVar<Integer> var = Var.valueOf(0);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> current = var;
+        for (int i = 0; i < depth; ++i) {
+            Function<Integer, Integer> increment = x -> {
+                count.incrementAndGet();
+                return x + 1;
+            };
+            Var<Integer> left = Var.lazyMap(current, increment);
+            Var<Integer> right = Var.lazyMap(current, increment);
+            current = Var.lazyCombine(left, right, (x, y) -> {
+                count.incrementAndGet();
+                return (x + y) / 2;
+            });
+        }
+
+        assertEquals(Integer.valueOf(depth), current.get());
+        assertEquals(3 * depth, count.get());
+
+        var.setValue(1);
+        assertEquals(Integer.valueOf(depth + 1), current.get());
+        assertEquals(Integer.valueOf(depth + 1), current.get());
+        assertEquals(6 * depth, count.get());
+    }
+
+    @Test
+    public void testDeepLazyChain() {
+        int length = 100_000;
+        SimpleVar<Integer> var = Var.valueOf(0);
+        Var<Integer> tail = var;
+        for (int i = 0; i < length; ++i) {
+            tail = Var.lazyMap(tail, x -> x + 1);
+        }
+
+        assertEquals(Integer.valueOf(length), tail.get());
+        var.setValue(1);
+        assertEquals(Integer.valueOf(length + 1), tail.get());
+
+        TestSubscriber<Integer> s = TestSubscriber.create(1);
+        tail.subscribe(s);
+        var.setValue(2);
+        s.assertValuesOnly(length + 1);
+
+        s.request(1);
+        s.assertValuesOnly(length + 1, length + 2);
+
+        s.request(1);
+        var.setValue(3);
+        s.assertValuesOnly(length + 1, length + 2, length + 3);
+    }
 }
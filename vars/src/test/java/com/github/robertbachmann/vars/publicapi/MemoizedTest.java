@@ -0,0 +1,80 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.MemoizedVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class MemoizedTest {
+    @Test
+    public void testPreviouslySeenInputsAreNotRecalculated() {
+        SimpleVar<String> scenario = Var.valueOf("base");
+        SimpleVar<Integer> shift = Var.valueOf(0);
+        AtomicInteger count = new AtomicInteger();
+        MemoizedVar<String> result = Var.combine(scenario, shift, (s, x) -> {
+            count.incrementAndGet();
+            return s + x;
+        }).memoized(2);
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+        result.subscribe(subscriber);
+        assertEquals(1, count.get());
+
+        scenario.setValue("stress");
+        scenario.setValue("base");
+        scenario.setValue("stress");
+        assertEquals("stress0", result.get());
+        assertEquals(3, count.get());
+        assertEquals(1, result.getHitCount());
+        assertEquals(2, result.getMissCount());
+        subscriber.assertValuesOnly("base0", "stress0", "base0", "stress0");
+
+        // evicts the least recently used entry ("base", 0)
+        shift.setValue(1);
+        scenario.setValue("base");
+        assertEquals("base1", result.get());
+        shift.setValue(0);
+        assertEquals(6, count.get());
+        assertEquals(1, result.getHitCount());
+    }
+
+    @Test
+    public void testLazyVar() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        AtomicInteger count = new AtomicInteger();
+        MemoizedVar<Integer> b = Var.lazyMap(a, x -> {
+            count.incrementAndGet();
+            return x * 10;
+        }).memoized(10);
+
+        assertEquals(Integer.valueOf(10), b.get());
+        a.setValue(2);
+        assertEquals(Integer.valueOf(20), b.get());
+        a.setValue(1);
+        assertEquals(Integer.valueOf(10), b.get());
+        assertEquals(2, count.get());
+        assertEquals(1, b.getHitCount());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testComputedVarCannotBeMemoized() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        Var.compute(() -> a.get() + 1).memoized(10);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testSourceVarCannotBeMemoized() {
+        IntVar.valueOf(1).memoized(10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxEntries() {
+        Var.map(Var.valueOf(1), x -> x).memoized(0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.InMemoryVarMetrics;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class MetricsTest {
+    @Test
+    public void testCounters() {
+        InMemoryVarMetrics metrics = new InMemoryVarMetrics();
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(metrics);
+        Var<Integer> parity = Var.map(a, x -> x % 2);
+        Var<Integer> inverse = Var.map(a, x -> 12 / x);
+        DisposableSubscription subscription = parity.subscribe(x -> {
+        });
+        inverse.subscribe(x -> {
+        }, e -> {
+        });
+
+        a.setValue(3);
+        a.setValue(3);
+        a.setValue(0);
+
+        InMemoryVarMetrics.Stats source = metrics.get(a);
+        assertEquals(3, source.getWrites());
+        assertEquals(1, source.getUnchanged());
+        assertEquals(2, source.getSubscribers());
+
+        // the first evaluation is the one that created the var
+        InMemoryVarMetrics.Stats parityStats = metrics.get(parity);
+        assertEquals(3, parityStats.getEvaluations());
+        assertEquals(1, parityStats.getUnchanged());
+        assertEquals(2, parityStats.getDeliveries());
+        assertEquals(1, parityStats.getSubscribers());
+        assertEquals(3, Arrays.stream(parityStats.getEvaluationTimeHistogram()).sum());
+        assertTrue(parityStats.getEvaluationNanosAt(0.5) <= parityStats.getEvaluationNanosAt(1.0));
+
+        InMemoryVarMetrics.Stats inverseStats = metrics.get(inverse);
+        assertEquals(3, inverseStats.getEvaluations());
+        assertEquals(1, inverseStats.getFailures());
+
+        // two vars created, two changes of both vars
+        assertEquals(4, metrics.getWaves());
+        assertEquals(2, metrics.getWaveSizeHistogram()[1]);
+        assertEquals(2, metrics.getWaveSizeHistogram()[2]);
+
+        subscription.dispose();
+        assertEquals(0, metrics.get(parity).getSubscribers());
+        assertEquals(3, metrics.snapshot().size());
+    }
+
+    @Test
+    public void testNotInstrumented() {
+        InMemoryVarMetrics metrics = new InMemoryVarMetrics();
+        SimpleVar<Integer> a = Var.valueOf(1);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        a.instrument(metrics);
+        b.subscribe(x -> {
+        });
+        a.setValue(2);
+
+        assertEquals(1, metrics.get(a).getWrites());
+        assertNull(metrics.get(b));
+        assertTrue(metrics.snapshot().containsKey(a.getId()));
+    }
+
+    @Test(timeOut = 30_000)
+    public void testCollectedVarIsDiscarded() throws InterruptedException {
+        InMemoryVarMetrics metrics = new InMemoryVarMetrics();
+        SimpleVar<Integer> a = Var.valueOf(1).instrument(metrics);
+        long id = Var.map(a, x -> x + 1).getId();
+        assertTrue(metrics.snapshot().containsKey(id));
+
+        // the collection is reported on the next write
+        for (int i = 2; metrics.snapshot().containsKey(id); ++i) {
+            System.gc();
+            Thread.sleep(10);
+            a.setValue(i);
+        }
+        assertTrue(metrics.snapshot().containsKey(a.getId()));
+    }
+}
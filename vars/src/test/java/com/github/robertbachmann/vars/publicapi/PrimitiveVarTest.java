@@ -0,0 +1,108 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DoubleVar;
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.LongVar;
+import com.github.robertbachmann.vars.SimpleDoubleVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleLongVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class PrimitiveVarTest {
+    @Test
+    public void testDoubleVar() {
+        SimpleDoubleVar revenue = DoubleVar.valueOf(1000.);
+        SimpleDoubleVar expenses = DoubleVar.valueOf(800.);
+        DoubleVar earnings = revenue.combine(expenses, (x, y) -> x - y);
+        DoubleVar doubled = earnings.map(x -> x * 2);
+
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        doubled.subscribe(subscriber);
+
+        revenue.setValue(1100.);
+        expenses.setValue(900.);
+
+        assertEquals(200., earnings.getAsDouble());
+        assertEquals(Double.valueOf(400.), doubled.get());
+        subscriber.assertValuesOnly(400., 600., 400.);
+    }
+
+    @Test
+    public void testIntVar() {
+        SimpleIntVar a = IntVar.valueOf(2);
+        IntVar square = a.map(x -> x * x);
+        IntVar sum = a.combine(square, (x, y) -> x + y);
+
+        a.setValue(3);
+
+        assertEquals(9, square.getAsInt());
+        assertEquals(12, sum.getAsInt());
+    }
+
+    @Test
+    public void testLongVar() {
+        SimpleLongVar a = LongVar.valueOf(Integer.MAX_VALUE);
+        LongVar b = a.map(x -> x * 2);
+
+        a.setValue(Long.MAX_VALUE / 2);
+
+        assertEquals(Long.MAX_VALUE - 1, b.getAsLong());
+    }
+
+    @Test
+    public void testChangeDetection() {
+        SimpleDoubleVar a = DoubleVar.valueOf(Double.NaN);
+        AtomicInteger count = new AtomicInteger();
+        DoubleVar b = a.map(x -> {
+            count.incrementAndGet();
+            return x;
+        });
+
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+
+        a.setValue(Double.NaN);
+        a.setValue(1.);
+        a.setValue(1.);
+
+        assertEquals(2, count.get());
+        subscriber.assertValuesOnly(Double.NaN, 1.);
+    }
+
+    @Test
+    public void testInterop() {
+        SimpleVar<String> text = Var.valueOf("abc");
+        IntVar length = IntVar.mapToInt(text, String::length);
+        Var<String> repeated = Var.combine(text, length, (s, n) -> s + n);
+
+        text.setValue("abcd");
+
+        assertEquals(4, length.getAsInt());
+        assertEquals("abcd4", repeated.get());
+    }
+
+    @Test
+    public void testTransaction() {
+        SimpleDoubleVar a = DoubleVar.valueOf(1.);
+        SimpleDoubleVar b = DoubleVar.valueOf(2.);
+        DoubleVar sum = a.combine(b, (x, y) -> x + y);
+
+        TestSubscriber<Double> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        Var.transaction(() -> {
+            a.setValue(10.);
+            b.setValue(20.);
+        });
+
+        subscriber.assertValuesOnly(3., 30.);
+    }
+}
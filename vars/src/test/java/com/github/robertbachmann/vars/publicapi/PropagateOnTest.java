@@ -0,0 +1,179 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class PropagateOnTest {
+    @Test
+    public void testWritesAreConflated() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> a = Var.valueOf(1).propagateOn(tasks::add);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> b = Var.map(a, x -> {
+            count.incrementAndGet();
+            return x * 10;
+        });
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+
+        a.setValue(2);
+        a.setValue(3);
+        assertEquals(1, tasks.size());
+        assertEquals(Integer.valueOf(1), a.get());
+        assertEquals(Integer.valueOf(10), b.get());
+
+        tasks.poll().run();
+        assertEquals(Integer.valueOf(3), a.get());
+        assertEquals(Integer.valueOf(30), b.get());
+        assertEquals(2, count.get());
+        subscriber.assertValuesOnly(10, 30);
+
+        a.setValue(4);
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        subscriber.assertValuesOnly(10, 30, 40);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSlowSubscriberDoesNotBlockWriter() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SimpleVar<Integer> a = Var.valueOf(0).propagateOn(executor);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger last = new AtomicInteger();
+            a.subscribe(x -> {
+                try {
+                    if (x > 0) { // the initial value is delivered on subscribe
+                        release.await();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                last.set(x);
+            });
+
+            for (int i = 1; i <= 1000; ++i) {
+                a.setValue(i);
+            }
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(1000, last.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLatestValueWins() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SimpleVar<Integer> a = Var.valueOf(0).propagateOn(executor);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        b.subscribe(subscriber);
+
+        for (int i = 1; i <= 1000; ++i) {
+            a.setValue(i);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(Integer.valueOf(1001), b.get());
+        assertEquals(Integer.valueOf(1001), subscriber.values().get(subscriber.values().size() - 1));
+    }
+
+    @Test
+    public void testPrimitiveVar() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleIntVar a = IntVar.valueOf(1).propagateOn(tasks::add);
+        IntVar b = a.map(x -> x * 2);
+
+        a.setValue(2);
+        a.setValue(3);
+        assertEquals(2, b.getAsInt());
+        assertEquals(1, tasks.size());
+
+        tasks.poll().run();
+        assertEquals(3, a.getAsInt());
+        assertEquals(6, b.getAsInt());
+    }
+
+    @Test
+    public void testRejectedExecution() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> a = Var.valueOf(1).propagateOn(task -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        });
+
+        a.setValue(2);
+        assertEquals(Integer.valueOf(2), a.get());
+
+        reject.set(false);
+        a.setValue(3);
+        tasks.poll().run();
+        assertEquals(Integer.valueOf(3), a.get());
+    }
+
+    @Test(timeOut = 10_000)
+    public void testRejectedExecutionDoesNotStrandConcurrentWrites() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            SimpleVar<Integer> a = Var.valueOf(0).propagateOn(task -> {
+                if (calls.incrementAndGet() % 2 == 0) {
+                    throw new RejectedExecutionException();
+                }
+                pool.execute(task);
+            });
+            Var<Integer> b = Var.map(a, x -> x);
+            b.subscribe(x -> {
+            });
+
+            Runnable writer = () -> {
+                for (int i = 0; i < 1000; ++i) {
+                    a.updateAndGet(x -> x + 1);
+                }
+            };
+            Thread other = new Thread(writer);
+            other.start();
+            writer.run();
+            other.join();
+
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2000), b.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSynchronousByDefault() {
+        SimpleVar<Integer> a = Var.valueOf(1).propagateOn(Runnable::run).propagateOn(null);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+
+        a.setValue(2);
+        assertEquals(Integer.valueOf(3), b.get());
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class SubscribeAsyncTest {
+    @Test
+    public void testMailboxHoldsLatestValue() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> var = Var.valueOf(0);
+        List<Integer> received = new ArrayList<>();
+        var.subscribeAsync(received::add, tasks::add);
+
+        var.setValue(1);
+        var.setValue(2);
+        var.setValue(3);
+        assertEquals(1, tasks.size());
+        assertTrue(received.isEmpty());
+
+        tasks.poll().run();
+        assertEquals(Collections.singletonList(3), received);
+
+        var.setValue(4);
+        tasks.poll().run();
+        assertTrue(tasks.isEmpty());
+        assertEquals(Arrays.asList(3, 4), received);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSlowSubscriberDoesNotBlockOthers() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SimpleVar<Integer> var = Var.valueOf(0);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger last = new AtomicInteger(-1);
+            var.subscribeAsync(x -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                last.set(x);
+            }, executor);
+            List<Integer> received = new ArrayList<>();
+            var.subscribe(received::add);
+
+            for (int i = 1; i <= 100; ++i) {
+                var.setValue(i);
+            }
+            assertEquals(101, received.size());
+
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(100, last.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedDrainDisposes() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        AtomicBoolean reject = new AtomicBoolean();
+        SimpleVar<Integer> var = Var.valueOf(0);
+        List<Integer> received = new ArrayList<>();
+        DisposableSubscription subscription = var.subscribeAsync(received::add, task -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        });
+        List<Integer> receivedByOther = new ArrayList<>();
+        var.subscribe(receivedByOther::add);
+        tasks.poll().run();
+
+        reject.set(true);
+        var.setValue(1);
+        assertTrue(subscription.isDisposed());
+
+        var.setValue(2);
+        assertTrue(tasks.isEmpty());
+        assertEquals(Collections.singletonList(0), received);
+        assertEquals(Arrays.asList(0, 1, 2), receivedByOther);
+    }
+
+    @Test
+    public void testDisposeDropsPendingValue() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> var = Var.valueOf(0);
+        List<Integer> received = new ArrayList<>();
+        DisposableSubscription subscription = var.subscribeAsync(received::add, tasks::add);
+
+        subscription.dispose();
+        var.setValue(1);
+        tasks.poll().run();
+
+        assertTrue(subscription.isDisposed());
+        assertTrue(received.isEmpty());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testErrorIsDeliveredAfterPendingValue() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> a = Var.valueOf(2);
+        Var<Integer> b = Var.map(a, x -> 12 / x);
+        List<Object> received = new ArrayList<>();
+        DisposableSubscription subscription = b.subscribeAsync(received::add, received::add, tasks::add);
+
+        a.setValue(0);
+        assertTrue(subscription.isDisposed());
+        tasks.poll().run();
+
+        assertTrue(tasks.isEmpty());
+        assertEquals(2, received.size());
+        assertEquals(6, received.get(0));
+        assertTrue(received.get(1) instanceof ArithmeticException);
+    }
+
+    @Test
+    public void testDisposeDropsPendingError() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        SimpleVar<Integer> a = Var.valueOf(2);
+        Var<Integer> b = Var.map(a, x -> 12 / x);
+        List<Object> received = new ArrayList<>();
+        DisposableSubscription subscription = b.subscribeAsync(received::add, received::add, tasks::add);
+        tasks.poll().run();
+
+        a.setValue(0);
+        subscription.dispose();
+        tasks.poll().run();
+
+        assertEquals(Collections.singletonList(6), received);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testDefaultExecutor() throws InterruptedException {
+        SimpleVar<Integer> var = Var.valueOf(0);
+        CountDownLatch latch = new CountDownLatch(1);
+        var.subscribeAsync(x -> {
+            if (x == 1) {
+                latch.countDown();
+            }
+        });
+
+        var.setValue(1);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.DisposableSubscription;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+@Test
+public class SubscriptionTest {
+    @Test
+    public void testChurn() {
+        SimpleVar<Integer> var = Var.valueOf(0);
+        int n = 1000;
+        AtomicIntegerArray received = new AtomicIntegerArray(n);
+        List<DisposableSubscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            int index = i;
+            subscriptions.add(var.subscribe(x -> received.incrementAndGet(index)));
+        }
+
+        for (int i = 0; i < n; i += 3) {
+            subscriptions.get(i).dispose();
+        }
+        var.setValue(1);
+
+        for (int i = 0; i < n; ++i) {
+            assertEquals("subscriber " + i, i % 3 == 0 ? 1 : 2, received.get(i));
+        }
+
+        for (int i = 0; i < n; ++i) {
+            if (i % 3 != 0) {
+                subscriptions.get(i).dispose();
+            }
+        }
+        var.setValue(2);
+
+        for (int i = 0; i < n; ++i) {
+            assertEquals("subscriber " + i, i % 3 == 0 ? 1 : 2, received.get(i));
+        }
+    }
+
+    @Test
+    public void testDisposeDuringDelivery() {
+        SimpleVar<Integer> var = Var.valueOf(0);
+        List<Integer> received = new ArrayList<>();
+        List<DisposableSubscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            subscriptions.add(var.subscribe(x -> {
+                received.add(x);
+                if (x == 1) {
+                    subscriptions.forEach(DisposableSubscription::dispose);
+                }
+            }));
+        }
+        received.clear();
+
+        var.setValue(1);
+        var.setValue(2);
+
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    public void testSetValueDuringDelivery() {
+        SimpleVar<Integer> var = Var.valueOf(0);
+        List<Integer> received = new ArrayList<>();
+        var.subscribe(x -> {
+            received.add(x);
+            if (x < 3) {
+                var.setValue(x + 1);
+            }
+        });
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), received);
+        assertEquals(Integer.valueOf(3), var.get());
+    }
+
+    @Test
+    public void testSubscribeAndDisposeDuringPropagation() throws InterruptedException {
+        int n = 64;
+        int writes = 200;
+        for (int round = 0; round < 50; ++round) {
+            SimpleVar<Integer> var = Var.valueOf(0);
+            AtomicIntegerArray received = new AtomicIntegerArray(n);
+            AtomicReferenceArray<Integer> last = new AtomicReferenceArray<>(n);
+            List<DisposableSubscription> temporaries = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                // each subscriber is moved to a lower slot when the temporary before it is disposed
+                temporaries.add(var.subscribe(x -> {
+                }));
+                int index = i;
+                var.subscribe(x -> {
+                    received.incrementAndGet(index);
+                    last.set(index, x);
+                });
+            }
+
+            Thread writer = new Thread(() -> {
+                for (int i = 1; i <= writes; ++i) {
+                    var.setValue(i);
+                }
+            });
+            writer.start();
+            for (DisposableSubscription temporary : temporaries) {
+                temporary.dispose();
+                var.subscribe(x -> {
+                }).dispose();
+            }
+            writer.join();
+
+            for (int i = 0; i < n; ++i) {
+                assertEquals("subscriber " + i, writes + 1, received.get(i));
+                assertEquals("subscriber " + i, Integer.valueOf(writes), last.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import com.github.robertbachmann.vars.VarTracer;
+import com.github.robertbachmann.vars.VarTracer.Span;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+@Test
+public class TracingTest {
+    @Test
+    public void testSpanTree() {
+        VarTracer tracer = new VarTracer(1.0, 10);
+        SimpleVar<Integer> a = Var.valueOf(1).trace(tracer);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        Var<Integer> c = Var.map(a, x -> x * 2);
+        Var<Integer> d = Var.combine(b, c, (x, y) -> x + y);
+        d.subscribe(x -> {
+        });
+
+        a.setValue(2);
+
+        assertEquals(1, tracer.getTraces().size());
+        List<Span> spans = tracer.getTraces().get(0).getSpans();
+        assertEquals(5, spans.size());
+
+        Span write = spans.get(0);
+        assertEquals(Span.Kind.WRITE, write.getKind());
+        assertEquals(a.getId(), write.getVar());
+        assertEquals(0, write.getParent());
+        assertEquals(Span.Outcome.CHANGED, write.getOutcome());
+
+        assertSpan(spans.get(1), Span.Kind.RECALCULATE, b.getId(), write.getId());
+        assertSpan(spans.get(2), Span.Kind.RECALCULATE, c.getId(), write.getId());
+        // d is scheduled by b, the first of its inputs that changed
+        assertSpan(spans.get(3), Span.Kind.RECALCULATE, d.getId(), spans.get(1).getId());
+        assertSpan(spans.get(4), Span.Kind.DELIVER, d.getId(), spans.get(3).getId());
+        assertEquals(Span.Outcome.DELIVERED, spans.get(4).getOutcome());
+
+        for (int i = 1; i < spans.size(); ++i) {
+            assertTrue(spans.get(i).getStartNanos() >= spans.get(i - 1).getStartNanos());
+        }
+    }
+
+    @Test
+    public void testOutcomes() {
+        VarTracer tracer = new VarTracer(1.0, 10);
+        SimpleVar<Integer> a = Var.valueOf(1).trace(tracer);
+        Var<Integer> parity = Var.map(a, x -> x % 2);
+        Var<Integer> inverse = Var.map(a, x -> 12 / x);
+        parity.subscribe(x -> {
+        });
+        inverse.subscribe(x -> {
+        }, e -> {
+        });
+
+        a.setValue(1);
+        a.setValue(3);
+        a.setValue(0);
+
+        List<VarTracer.Trace> traces = tracer.getTraces();
+        assertEquals(3, traces.size());
+
+        List<Span> unchanged = traces.get(0).getSpans();
+        assertEquals(1, unchanged.size());
+        assertEquals(Span.Outcome.UNCHANGED, unchanged.get(0).getOutcome());
+
+        Span parityOf3 = spanOf(traces.get(1).getSpans(), parity);
+        assertEquals(Span.Outcome.UNCHANGED, parityOf3.getOutcome());
+
+        Span inverseOf0 = spanOf(traces.get(2).getSpans(), inverse);
+        assertEquals(Span.Outcome.FAILED, inverseOf0.getOutcome());
+    }
+
+    @Test
+    public void testSampling() {
+        VarTracer never = new VarTracer(0.0, 10);
+        SimpleVar<Integer> a = Var.valueOf(1).trace(never);
+        Var.map(a, x -> x + 1).subscribe(x -> {
+        });
+        a.setValue(2);
+        assertTrue(never.getTraces().isEmpty());
+
+        VarTracer tracer = new VarTracer(1.0, 2);
+        a.trace(tracer);
+        for (int i = 3; i < 8; ++i) {
+            a.setValue(i);
+        }
+        List<VarTracer.Trace> traces = tracer.getTraces();
+        assertEquals(2, traces.size());
+        assertTrue(traces.get(0).getId() < traces.get(1).getId());
+
+        a.trace(null);
+        a.setValue(8);
+        assertEquals(2, tracer.getTraces().size());
+        tracer.clear();
+        assertTrue(tracer.getTraces().isEmpty());
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        VarTracer tracer = new VarTracer(1.0, 10);
+        SimpleVar<Integer> a = Var.valueOf(1).trace(tracer);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        b.subscribe(x -> {
+        });
+        a.setValue(2);
+
+        StringBuilder json = new StringBuilder();
+        tracer.writeJson(json);
+        assertTrue(json.toString(), json.toString().startsWith("[{\"id\":1,"));
+        assertTrue(json.toString(), json.toString().contains("\"kind\":\"RECALCULATE\",\"var\":" + b.getId()));
+        assertTrue(json.toString(), json.toString().endsWith("]}]"));
+
+        StringBuilder chrome = new StringBuilder();
+        tracer.writeChromeTrace(chrome);
+        assertTrue(chrome.toString(), chrome.toString().startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":["));
+        assertTrue(chrome.toString(), chrome.toString().contains("\"name\":\"write #" + a.getId() + "\""));
+        assertTrue(chrome.toString(), chrome.toString().contains("\"name\":\"onNext #" + b.getId() + "\""));
+        assertTrue(chrome.toString(), chrome.toString().endsWith("]}"));
+    }
+
+    @Test
+    public void testVarsDerivedBeforeTracing() {
+        VarTracer tracer = new VarTracer(1.0, 10);
+        SimpleVar<Integer> a = Var.valueOf(1);
+        Var<Integer> b = Var.map(a, x -> x + 1);
+        Var<Integer> c = Var.map(b, x -> x * 2);
+        c.subscribe(x -> {
+        });
+        a.trace(tracer);
+
+        a.setValue(2);
+
+        List<Span> spans = tracer.getTraces().get(0).getSpans();
+        assertEquals(4, spans.size());
+        assertSpan(spans.get(3), Span.Kind.DELIVER, c.getId(), spans.get(2).getId());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSampleRate() {
+        new VarTracer(1.5, 10);
+    }
+
+    private static void assertSpan(Span span, Span.Kind kind, long var, long parent) {
+        assertEquals(kind, span.getKind());
+        assertEquals(var, span.getVar());
+        assertEquals(parent, span.getParent());
+    }
+
+    private static Span spanOf(List<Span> spans, Var<?> var) {
+        for (Span span : spans) {
+            if (span.getKind() == Span.Kind.RECALCULATE && span.getVar() == var.getId()) {
+                return span;
+            }
+        }
+        throw new AssertionError("no span of " + var.getId() + " in " + spans);
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.robertbachmann.vars.publicapi;
+
+import com.github.robertbachmann.vars.IntVar;
+import com.github.robertbachmann.vars.SimpleIntVar;
+import com.github.robertbachmann.vars.SimpleVar;
+import com.github.robertbachmann.vars.Var;
+import io.reactivex.subscribers.TestSubscriber;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+@Test
+public class TransactionTest {
+    @Test
+    public void testSingleWave() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(2);
+        AtomicInteger count = new AtomicInteger();
+        Var<Integer> sum = Var.combine(a, b, (x, y) -> {
+            count.incrementAndGet();
+            return x + y;
+        });
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        Var.transaction(() -> {
+            a.setValue(10);
+            b.setValue(20);
+            assertEquals(Integer.valueOf(10), a.get());
+            assertEquals(Integer.valueOf(3), sum.get());
+        });
+
+        assertEquals(2, count.get());
+        subscriber.assertValuesOnly(3, 30);
+    }
+
+    @Test
+    public void testSourceSubscribersNotifiedOnce() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        a.subscribe(subscriber);
+
+        Var.transaction(() -> {
+            a.setValue(2);
+            a.setValue(3);
+        });
+        Var.transaction(() -> {
+            a.setValue(4);
+            a.setValue(3);
+        });
+
+        subscriber.assertValuesOnly(1, 3);
+    }
+
+    @Test
+    public void testNested() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(2);
+        Var<Integer> sum = Var.combine(a, b, (x, y) -> x + y);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        Var.transaction(() -> {
+            a.setValue(10);
+            Var.transaction(() -> b.setValue(20));
+            assertEquals(Integer.valueOf(3), sum.get());
+        });
+
+        subscriber.assertValuesOnly(3, 30);
+    }
+
+    @Test
+    public void testRollback() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(2);
+        Var<Integer> sum = Var.combine(a, b, (x, y) -> x + y);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        try {
+            Var.transaction(() -> {
+                a.setValue(10);
+                b.setValue(20);
+                throw new IllegalStateException("abort");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("abort", e.getMessage());
+        }
+
+        assertEquals(Integer.valueOf(1), a.get());
+        assertEquals(Integer.valueOf(2), b.get());
+        subscriber.assertValuesOnly(3);
+
+        a.setValue(5);
+        subscriber.assertValuesOnly(3, 7);
+    }
+
+    @Test
+    public void testNestedRollback() {
+        SimpleVar<Integer> a = Var.valueOf(1);
+        SimpleVar<Integer> b = Var.valueOf(2);
+        SimpleIntVar c = IntVar.valueOf(3);
+        Var<Integer> sum = Var.combine(a, b, c, (x, y, z) -> x + y + z);
+
+        TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+        sum.subscribe(subscriber);
+
+        Var.transaction(() -> {
+            a.setValue(10);
+            try {
+                Var.transaction(() -> {
+                    a.setValue(100);
+                    b.setValue(200);
+                    c.setValue(300);
+                    throw new IllegalStateException("abort");
+                });
+                fail("exception expected");
+            } catch (IllegalStateException e) {
+                assertEquals("abort", e.getMessage());
+            }
+            assertEquals(Integer.valueOf(10), a.get());
+            assertEquals(Integer.valueOf(2), b.get());
+            assertEquals(3, c.getAsInt());
+            c.setValue(30);
+        });
+
+        subscriber.assertValuesOnly(6, 42);
+    }
+}
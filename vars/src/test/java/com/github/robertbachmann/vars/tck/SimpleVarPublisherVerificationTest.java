@@ -28,7 +28,8 @@ public class SimpleVarPublisherVerificationTest extends PublisherVerification<Lo
     }
 
     public SimpleVarPublisherVerificationTest() {
-        super(new TestEnvironment());
+        // the publisher completes after 100 ms, so wait longer for it than the default 100 ms
+        super(new TestEnvironment(500, 100));
     }
 
     public Publisher<Long> createPublisher(final long elements) {